@@ -0,0 +1,94 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.config.FacialRecognitionProperties.QuantizationMode;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end exact gallery search (decode, normalize, scan, top-k) over synthetic galleries,
+ * for a single probe and for a batch of probes sharing one scan, with the scan on one thread or sharded
+ * across all cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx4g"})
+public class GallerySearchBenchmark {
+
+    private static final int DIMENSION = 128;
+    private static final int TOP_K = 5;
+    private static final int BATCH_SIZE = 32;
+
+    @Param({"1000", "100000", "1000000"})
+    public int gallerySize;
+
+    @Param({"NONE", "INT8"})
+    public QuantizationMode quantization;
+
+    @Param({"1", "0"}) // 0 = available processors
+    public int parallelism;
+
+    private ExactSearchEngine engine;
+    private List<byte[]> probes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FacialRecognitionProperties properties = new FacialRecognitionProperties();
+        properties.getQuantization().setMode(quantization);
+        properties.getSearch().getScan().setParallelism(parallelism);
+        EmbeddingIndex index = new EmbeddingIndex(null, null, null, properties);
+        Random random = new Random(42);
+        for (int i = 0; i < gallerySize; i++) {
+            index.upsert(i, "user" + i, randomEmbedding(random));
+        }
+        engine = new ExactSearchEngine(index, new SimpleMeterRegistry());
+        probes = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            probes.add(randomEmbedding(random));
+        }
+    }
+
+    @Benchmark
+    public List<SearchHit> search() {
+        next = (next + 1) % BATCH_SIZE;
+        return engine.search(probes.get(next), TOP_K);
+    }
+
+    /**
+     * Time for all {@value #BATCH_SIZE} probes; divide by the batch size to compare with {@link #search()}.
+     */
+    @Benchmark
+    public List<List<SearchHit>> searchBatch() {
+        return engine.searchBatch(probes, TOP_K);
+    }
+
+    private static byte[] randomEmbedding(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        EmbeddingCodec.normalize(vector);
+        return EmbeddingCodec.encode(vector);
+    }
+}
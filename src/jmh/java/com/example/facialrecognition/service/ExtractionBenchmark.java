@@ -0,0 +1,89 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imencode;
+import static org.bytedeco.opencv.global.opencv_imgproc.GaussianBlur;
+import static org.bytedeco.opencv.global.opencv_imgproc.circle;
+import static org.bytedeco.opencv.global.opencv_imgproc.ellipse;
+
+/**
+ * Embedding extraction cost per strategy and camera resolution, on synthetic JPEG images
+ * (a smooth background with a face-like ellipse, so the OpenCV path does real work).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ExtractionBenchmark {
+
+    @Param({"mock", "opencv"})
+    public String strategy;
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String resolution;
+
+    private FacialRecognitionStrategy facialRecognitionStrategy;
+    private byte[] image;
+
+    @Setup
+    public void setUp() {
+        FacialRecognitionProperties properties = new FacialRecognitionProperties();
+        if ("opencv".equals(strategy)) {
+            ImagePreprocessor preprocessor = new ImagePreprocessor(properties, new DefaultResourceLoader(), new SimpleMeterRegistry());
+            preprocessor.loadCascade();
+            facialRecognitionStrategy = new OpenCVFacialRecognitionService(preprocessor);
+        } else {
+            facialRecognitionStrategy = new MockFacialRecognitionService();
+        }
+        String[] size = resolution.split("x");
+        image = syntheticJpeg(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+    }
+
+    @Benchmark
+    public byte[] extractFacialEmbedding() {
+        return facialRecognitionStrategy.extractFacialEmbedding(image);
+    }
+
+    static byte[] syntheticJpeg(int width, int height) {
+        try (Mat image = new Mat(height, width, CV_8UC3, new Scalar(170, 160, 150, 0));
+             BytePointer encoded = new BytePointer()) {
+            Point center = new Point(width / 2, height / 2);
+            int faceHeight = height / 3;
+            ellipse(image, center, new Size(faceHeight * 3 / 8, faceHeight / 2), 0, 0, 360,
+                    new Scalar(120, 140, 190, 0), -1, 8, 0);
+            circle(image, new Point(width / 2 - faceHeight / 6, height / 2 - faceHeight / 8), faceHeight / 20,
+                    new Scalar(40, 40, 40, 0), -1, 8, 0);
+            circle(image, new Point(width / 2 + faceHeight / 6, height / 2 - faceHeight / 8), faceHeight / 20,
+                    new Scalar(40, 40, 40, 0), -1, 8, 0);
+            GaussianBlur(image, image, new Size(5, 5), 0);
+            imencode(".jpg", image, encoded);
+            byte[] bytes = new byte[(int) encoded.limit()];
+            encoded.get(bytes);
+            return bytes;
+        }
+    }
+}
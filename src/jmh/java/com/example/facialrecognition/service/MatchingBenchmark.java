@@ -0,0 +1,70 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a single embedding comparison ({@code isMatch} and the raw {@code similarity}) per strategy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MatchingBenchmark {
+
+    private static final int DIMENSION = 128;
+
+    @Param({"mock", "opencv"})
+    public String strategy;
+
+    private FacialRecognitionStrategy facialRecognitionStrategy;
+    private byte[] probe;
+    private byte[] template;
+
+    @Setup
+    public void setUp() {
+        facialRecognitionStrategy = "opencv".equals(strategy)
+                ? new OpenCVFacialRecognitionService(new ImagePreprocessor(new FacialRecognitionProperties(), new DefaultResourceLoader(), new SimpleMeterRegistry()))
+                : new MockFacialRecognitionService();
+        Random random = new Random(42);
+        probe = randomEmbedding(random);
+        template = randomEmbedding(random);
+    }
+
+    @Benchmark
+    public boolean isMatch() {
+        return facialRecognitionStrategy.isMatch(probe, template);
+    }
+
+    @Benchmark
+    public double similarity() {
+        return facialRecognitionStrategy.similarity(probe, template);
+    }
+
+    private static byte[] randomEmbedding(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        EmbeddingCodec.normalize(vector);
+        return EmbeddingCodec.encode(vector);
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.facialrecognition.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Typed view of the {@code facial.recognition.*} properties in application.yml.
+ * Bean selection (strategy, search engine) still happens through {@code @ConditionalOnProperty};
+ * this class holds the tuning knobs and documents the defaults.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "facial.recognition")
+public class FacialRecognitionProperties {
+
+    /**
+     * Recognition strategy to use: 'mock' or 'opencv'.
+     */
+    private String strategy = "mock";
+
+    private final Search search = new Search();
+
+    private final Quantization quantization = new Quantization();
+
+    private final Store store = new Store();
+
+    private final Batch batch = new Batch();
+
+    private final Extraction extraction = new Extraction();
+
+    private final Preprocessing preprocessing = new Preprocessing();
+
+    private final Cache cache = new Cache();
+
+    private final Templates templates = new Templates();
+
+    private final Changes changes = new Changes();
+
+    private final Streams streams = new Streams();
+
+    private final Logging logging = new Logging();
+
+    @Getter
+    @Setter
+    public static class Search {
+        /**
+         * Gallery search engine: 'exact' (linear scan, recall baseline) or 'hnsw' (approximate).
+         */
+        private String engine = "exact";
+
+        /**
+         * Number of candidates returned by a gallery search.
+         */
+        private int topK = 5;
+
+        private final Hnsw hnsw = new Hnsw();
+
+        private final Scan scan = new Scan();
+    }
+
+    @Getter
+    @Setter
+    public static class Scan {
+        /**
+         * Threads scoring gallery shards in parallel during exact searches (0 = available processors, 1 = calling thread only).
+         */
+        private int parallelism = 0;
+
+        /**
+         * Size of the gallery shard scored by one task; keep it within a core's L2 cache.
+         */
+        private DataSize shardSize = DataSize.ofKilobytes(512);
+
+        /**
+         * Stop scheduling shards once every query has a candidate at least this similar; unset scans the whole gallery.
+         */
+        private Double earlyExitScore;
+    }
+
+    @Getter
+    @Setter
+    public static class Hnsw {
+        /**
+         * Maximum number of links per node on the upper layers (layer 0 keeps twice as many).
+         */
+        private int m = 16;
+
+        /**
+         * Size of the dynamic candidate list used while inserting nodes.
+         */
+        private int efConstruction = 200;
+
+        /**
+         * Size of the dynamic candidate list used while searching; higher means better recall, slower queries.
+         */
+        private int efSearch = 64;
+    }
+
+    @Getter
+    @Setter
+    public static class Quantization {
+        /**
+         * Compression applied to the in-memory gallery for the first scoring pass: 'none', 'int8' or 'pq'.
+         */
+        private QuantizationMode mode = QuantizationMode.NONE;
+
+        /**
+         * Number of users (gallery slots, one per user) the quantizer is trained on; quantization kicks in once the gallery holds this many users.
+         */
+        private int trainingSize = 4096;
+
+        /**
+         * The first pass keeps top-k * rerank-factor candidates, which are then re-ranked at full precision.
+         */
+        private int rerankFactor = 4;
+
+        /**
+         * Number of product-quantization subspaces (bytes per code); must divide the embedding dimension.
+         */
+        private int pqSubspaces = 16;
+
+        /**
+         * Number of k-means iterations used to train each product-quantization codebook.
+         */
+        private int pqIterations = 8;
+    }
+
+    @Getter
+    @Setter
+    public static class Store {
+        /**
+         * Keep full-precision embeddings off-heap in a persistent, memory-mapped segment file.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory holding the segment file and its id/username sidecar.
+         */
+        private String directory = "./data";
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+        /**
+         * Maximum number of images between decode and persistence at any time; bounds memory regardless of batch size.
+         */
+        private int maxInFlight = 64;
+
+        /**
+         * Templates written per transaction; keep aligned with spring.jpa.properties.hibernate.jdbc.batch_size.
+         */
+        private int persistBatchSize = 50;
+
+        /**
+         * Largest single image accepted from an archive.
+         */
+        private DataSize maxEntrySize = DataSize.ofMegabytes(50);
+    }
+
+    @Getter
+    @Setter
+    public static class Extraction {
+        /**
+         * Platform threads running embedding extraction; 0 means one per available processor.
+         */
+        private int threads = 0;
+
+        /**
+         * Images that may wait for a free extraction thread; interactive requests beyond this get HTTP 429.
+         */
+        private int queueCapacity = 64;
+
+        /**
+         * Idle direct buffers kept per size class for reading uploaded images.
+         */
+        private int pooledBuffers = 16;
+
+        /**
+         * Largest image buffer returned to the pool; bigger images get a one-off buffer.
+         */
+        private DataSize maxPooledBufferSize = DataSize.ofMegabytes(8);
+
+        /**
+         * Largest image accepted as a raw request body by the asynchronous endpoints (multipart uploads are bounded by spring.servlet.multipart).
+         */
+        private DataSize maxImageSize = DataSize.ofMegabytes(50);
+    }
+
+    @Getter
+    @Setter
+    public static class Preprocessing {
+        /**
+         * Whether the OpenCV strategy downscales on decode and crops to the face before embedding.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Smallest short side (in pixels) kept when choosing a reduced decode (IMREAD_REDUCED_COLOR_2/4/8).
+         */
+        private int minDecodeSide = 480;
+
+        /**
+         * Whether to look for a face and crop to it.
+         */
+        private boolean detectFaces = true;
+
+        /**
+         * Whether images without a detectable face are rejected; otherwise the whole frame is used.
+         */
+        private boolean requireFace = false;
+
+        /**
+         * Face cascade to use, as a Spring resource location.
+         */
+        private String cascade = "classpath:cascades/lbpcascade_frontalface_improved.xml";
+
+        /**
+         * Smallest face size (in pixels of the reduced image) the detector looks for.
+         */
+        private int minFaceSize = 40;
+
+        /**
+         * Margin added around the detected face, as a fraction of its size.
+         */
+        private double faceMargin = 0.15;
+
+        /**
+         * Side (in pixels) of the square image the face is normalized to before embedding.
+         */
+        private int outputSize = 128;
+    }
+
+    @Getter
+    @Setter
+    public static class Templates {
+        /**
+         * Templates kept per user; enrolling beyond this replaces the user's oldest template.
+         */
+        private int maxPerUser = 5;
+
+        /**
+         * Users shortlisted per result by their centroid (k * refine-factor) and re-scored against each template.
+         */
+        private int refineFactor = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Changes {
+        /**
+         * Tail the template change log so enrollments made on other nodes reach this node's gallery.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Identifies this node in the change log, so it skips its own changes; random per process by default.
+         */
+        private String nodeId = UUID.randomUUID().toString();
+
+        /**
+         * Delay between two polls of the change log.
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+
+        /**
+         * Changes read per query while replaying the log.
+         */
+        private int batchSize = 500;
+
+        /**
+         * How long a missing change id may stay uncommitted before replay skips it as rolled back.
+         */
+        private Duration gapTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Changes older than this are purged; snapshots older than the log are rebuilt from the database.
+         */
+        private Duration retention = Duration.ofDays(7);
+    }
+
+    @Getter
+    @Setter
+    public static class Streams {
+        /**
+         * Frames whose perceptual hash differs from the last processed frame in at most this many of 64 bits are skipped.
+         */
+        private int maxHashDistance = 6;
+
+        /**
+         * Similarity to the tracked face above which a changed frame keeps its identity without a gallery search; unset uses the match threshold.
+         */
+        private Double trackingScore;
+
+        /**
+         * Maximum number of camera sessions kept; the least recently used is dropped beyond this.
+         */
+        private long maxSessions = 1_000;
+
+        /**
+         * A camera session without frames for this long is dropped; its next frame starts a new one.
+         */
+        private Duration sessionTtl = Duration.ofMinutes(2);
+
+        /**
+         * Largest frame accepted.
+         */
+        private DataSize maxFrameSize = DataSize.ofMegabytes(8);
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        /**
+         * Whether extracted embeddings are cached by a hash of the image content.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of cached results (embeddings and "no face" results).
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * How long a result is kept after it was extracted.
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * Maximum number of enrolled templates kept in the verification near-cache.
+         */
+        private long templateMaximumSize = 50_000;
+
+        /**
+         * How long a cached template is served before it is reloaded from the database.
+         */
+        private Duration templateTtl = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Logging {
+        /**
+         * Whether a request may ask for debug and SQL tracing of itself through the debug header.
+         */
+        private boolean requestDebug = false;
+
+        /**
+         * Header that turns on tracing for a single request when set to 'true'.
+         */
+        private String debugHeader = "X-Debug-Trace";
+    }
+
+    public enum QuantizationMode {
+        NONE, INT8, PQ
+    }
+}
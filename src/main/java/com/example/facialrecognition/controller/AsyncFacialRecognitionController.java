@@ -0,0 +1,277 @@
+package com.example.facialrecognition.controller;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.dto.RecognitionItemResult;
+import com.example.facialrecognition.dto.VerificationResult;
+import com.example.facialrecognition.index.GallerySearchEngine;
+import com.example.facialrecognition.index.SearchHit;
+import com.example.facialrecognition.repository.UserRepository;
+import com.example.facialrecognition.repository.UserTemplateView;
+import com.example.facialrecognition.service.EmbeddingExtractor;
+import com.example.facialrecognition.service.ExtractionOverloadedException;
+import com.example.facialrecognition.service.FacialRecognitionStrategy;
+import com.example.facialrecognition.service.ImageBuffer;
+import com.example.facialrecognition.service.ImageBufferPool;
+import com.example.facialrecognition.service.RecognitionMetrics;
+import com.example.facialrecognition.service.TemplateCache;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Asynchronous variant of the recognition and verification endpoints, for gateways holding many requests in flight.
+ * <p>
+ * Each endpoint returns a {@link CompletableFuture}: the request thread only reads the image into a pooled buffer
+ * and hands it to the bounded {@link EmbeddingExtractor} pool, then the servlet request is suspended until the
+ * embedding is scored. No thread is held while an image waits for or runs on the extraction pool, and scoring
+ * (the gallery search or template comparison) runs on a virtual thread once the extraction thread is released,
+ * so it never occupies extraction capacity.
+ * <p>
+ * Images are sent either as the raw request body ({@code image/*} or {@code application/octet-stream}), which is
+ * streamed straight into a direct buffer without multipart parsing or spooling, or as a multipart {@code file} part.
+ * Results are JSON ({@link RecognitionItemResult}, {@link VerificationResult}) with the similarity scores.
+ */
+@RestController
+@RequestMapping(value = "/api/v2/facial", produces = MediaType.APPLICATION_JSON_VALUE)
+@Slf4j
+@RequiredArgsConstructor
+public class AsyncFacialRecognitionController {
+
+    private static final String NO_FACE = "No face detected or failed to extract embedding from the image.";
+
+    private final UserRepository userRepository;
+    private final FacialRecognitionStrategy facialRecognitionStrategy;
+    private final EmbeddingExtractor embeddingExtractor;
+    private final ImageBufferPool imageBufferPool;
+    private final GallerySearchEngine gallerySearchEngine;
+    private final TemplateCache templateCache;
+    private final FacialRecognitionProperties properties;
+    private final RecognitionMetrics metrics;
+    private final ExecutorService scoring = Executors.newVirtualThreadPerTaskExecutor(); // Off the extraction pool
+
+    @PreDestroy
+    void shutdown() {
+        scoring.shutdownNow();
+    }
+
+    /**
+     * Endpoint for recognizing a face from an image sent as the request body.
+     *
+     * @param image   The image content.
+     * @param request The request, suspended until the result is ready.
+     * @return The top-k candidates with their scores and the matched username, if any.
+     */
+    @PostMapping(value = "/recognize", consumes = {"image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public CompletableFuture<ResponseEntity<RecognitionItemResult>> recognizeImage(InputStream image,
+                                                                                   HttpServletRequest request) {
+        return recognize(null, () -> readBody(image, request), request);
+    }
+
+    /**
+     * Endpoint for recognizing a face from an uploaded image file.
+     *
+     * @param file    The image file containing the face to recognize.
+     * @param request The request, suspended until the result is ready.
+     * @return The top-k candidates with their scores and the matched username, if any.
+     */
+    @PostMapping(value = "/recognize", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<RecognitionItemResult>> recognizeFile(@RequestParam("file") MultipartFile file,
+                                                                                  HttpServletRequest request) {
+        if (file.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(new RecognitionItemResult(
+                    file.getOriginalFilename(), RecognitionItemResult.Status.FAILED, null, List.of(),
+                    "Please select an image file to recognize.")));
+        }
+        return recognize(file.getOriginalFilename(), () -> imageBufferPool.read(file), request);
+    }
+
+    /**
+     * Endpoint for verifying a face, sent as the request body, against a specific user's enrolled templates.
+     *
+     * @param username The username to verify against.
+     * @param image    The image content.
+     * @param request  The request, suspended until the result is ready.
+     * @return The verification decision and the best similarity to the user's templates.
+     */
+    @PostMapping(value = "/verify", consumes = {"image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public CompletableFuture<ResponseEntity<VerificationResult>> verifyImage(@RequestParam("username") String username,
+                                                                             InputStream image,
+                                                                             HttpServletRequest request) {
+        return verify(username, () -> readBody(image, request), request);
+    }
+
+    /**
+     * Endpoint for verifying a face, uploaded as an image file, against a specific user's enrolled templates.
+     *
+     * @param username The username to verify against.
+     * @param file     The image file containing the face to verify.
+     * @param request  The request, suspended until the result is ready.
+     * @return The verification decision and the best similarity to the user's templates.
+     */
+    @PostMapping(value = "/verify", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<VerificationResult>> verifyFile(@RequestParam("username") String username,
+                                                                            @RequestParam("file") MultipartFile file,
+                                                                            HttpServletRequest request) {
+        if (file.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(new VerificationResult(
+                    username, VerificationResult.Status.FAILED, null, "Please select an image file for verification.")));
+        }
+        return verify(username, () -> imageBufferPool.read(file), request);
+    }
+
+    private CompletableFuture<ResponseEntity<RecognitionItemResult>> recognize(String item, ImageSource source,
+                                                                             HttpServletRequest request) {
+        // 1. Read the image and queue it for extraction; the request thread is released from here on
+        CompletableFuture<byte[]> extraction;
+        try {
+            extraction = embeddingExtractor.extractAsync(source.read());
+        } catch (ExtractionOverloadedException e) {
+            return CompletableFuture.completedFuture(tooManyRequests(new RecognitionItemResult(item,
+                    RecognitionItemResult.Status.FAILED, null, List.of(), "Server is busy, please retry shortly.")));
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(unreadable(e).body(new RecognitionItemResult(item,
+                    RecognitionItemResult.Status.FAILED, null, List.of(), readFailure(e))));
+        }
+
+        return extraction.thenApplyAsync(queryEmbedding -> {
+            if (queryEmbedding == null) {
+                metrics.recordOutcome("recognize", "no_face", request);
+                return ResponseEntity.badRequest().body(new RecognitionItemResult(item,
+                        RecognitionItemResult.Status.NO_FACE, null, List.of(), NO_FACE));
+            }
+
+            // 2. Search the resident gallery and accept the best candidate if it clears the strategy's threshold
+            List<SearchHit> candidates = gallerySearchEngine.search(queryEmbedding, properties.getSearch().getTopK());
+            boolean matched = !candidates.isEmpty() && candidates.get(0).score() >= facialRecognitionStrategy.getMatchThreshold();
+            RecognitionItemResult.Status status = matched ? RecognitionItemResult.Status.MATCH : RecognitionItemResult.Status.NO_MATCH;
+            metrics.recordOutcome("recognize", status, request);
+            return ResponseEntity.ok(new RecognitionItemResult(item, status,
+                    matched ? candidates.get(0).username() : null, candidates, null));
+        }, scoring).exceptionally(e -> {
+            log.error("Error during facial recognition: {}", cause(e).getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new RecognitionItemResult(item,
+                    RecognitionItemResult.Status.FAILED, null, List.of(), "An error occurred during facial recognition."));
+        });
+    }
+
+    private CompletableFuture<ResponseEntity<VerificationResult>> verify(String username, ImageSource source,
+                                                                       HttpServletRequest request) {
+        if (username == null || username.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(new VerificationResult(
+                    username, VerificationResult.Status.FAILED, null, "Username cannot be empty for verification.")));
+        }
+
+        // 1. Get the target user's facial templates: from the near-cache, or with a single projection query
+        List<byte[]> targetEmbeddings = templateCache.get(username);
+        if (targetEmbeddings == null) {
+            List<UserTemplateView> target = userRepository.findTemplatesByUsername(username);
+            targetEmbeddings = target.stream().map(UserTemplateView::getFacialEmbedding).filter(Objects::nonNull).toList();
+            if (targetEmbeddings.isEmpty()) {
+                String message = target.isEmpty() ? "User not found: " + username : "No facial template found for user: " + username;
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                        new VerificationResult(username, VerificationResult.Status.NOT_FOUND, null, message)));
+            }
+            templateCache.put(username, targetEmbeddings);
+        }
+
+        // 2. Read the image and queue it for extraction; the request thread is released from here on
+        CompletableFuture<byte[]> extraction;
+        try {
+            extraction = embeddingExtractor.extractAsync(source.read());
+        } catch (ExtractionOverloadedException e) {
+            return CompletableFuture.completedFuture(tooManyRequests(new VerificationResult(username,
+                    VerificationResult.Status.FAILED, null, "Server is busy, please retry shortly.")));
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(unreadable(e).body(new VerificationResult(username,
+                    VerificationResult.Status.FAILED, null, readFailure(e))));
+        }
+
+        List<byte[]> templates = targetEmbeddings;
+        return extraction.thenApplyAsync(queryEmbedding -> {
+            if (queryEmbedding == null) {
+                metrics.recordOutcome("verify", "no_face", request);
+                return ResponseEntity.badRequest().body(new VerificationResult(username,
+                        VerificationResult.Status.NO_FACE, null, NO_FACE));
+            }
+
+            // 3. Score the query against each of the user's templates (a match on any of them verifies)
+            double best = Double.NEGATIVE_INFINITY;
+            boolean matched = false;
+            for (byte[] template : templates) {
+                best = Math.max(best, facialRecognitionStrategy.similarity(queryEmbedding, template));
+                matched |= facialRecognitionStrategy.isMatch(queryEmbedding, template);
+            }
+            VerificationResult.Status status = matched ? VerificationResult.Status.MATCH : VerificationResult.Status.NO_MATCH;
+            metrics.recordOutcome("verify", status, request);
+            return ResponseEntity.ok(new VerificationResult(username, status, best, null));
+        }, scoring).exceptionally(e -> {
+            log.error("Error during facial verification: {}", cause(e).getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new VerificationResult(username,
+                    VerificationResult.Status.FAILED, null, "An error occurred during facial verification."));
+        });
+    }
+
+    /**
+     * Streams the request body into a pooled buffer, using Content-Length (when sent) as the size hint.
+     */
+    private ImageBuffer readBody(InputStream image, HttpServletRequest request) throws IOException {
+        return imageBufferPool.read(image, request.getContentLengthLong(),
+                properties.getExtraction().getMaxImageSize().toBytes());
+    }
+
+    /**
+     * @return 413 for an image over the size limit, 400 for one that cannot be read.
+     */
+    private static ResponseEntity.BodyBuilder unreadable(Exception e) {
+        return ResponseEntity.status(e instanceof IllegalArgumentException ? HttpStatus.PAYLOAD_TOO_LARGE : HttpStatus.BAD_REQUEST);
+    }
+
+    private static String readFailure(Exception e) {
+        if (e instanceof IllegalArgumentException) {
+            return e.getMessage();
+        }
+        log.error("Error reading image: {}", e.getMessage());
+        return "Failed to read image file.";
+    }
+
+    private static Throwable cause(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Response for requests rejected because embedding extraction is saturated; clients should back off and retry.
+     */
+    private static <T> ResponseEntity<T> tooManyRequests(T body) {
+        log.warn("Embedding extraction at capacity; rejecting request.");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(body);
+    }
+
+    /**
+     * Reads the image of a request into a pooled buffer, either from the raw body or from a multipart part.
+     */
+    @FunctionalInterface
+    private interface ImageSource {
+        ImageBuffer read() throws IOException;
+    }
+}
@@ -1,14 +1,32 @@
 package com.example.facialrecognition.controller;
 
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.dto.BatchEnrollmentResponse;
+import com.example.facialrecognition.index.EmbeddingIndex;
+import com.example.facialrecognition.index.GallerySearchEngine;
+import com.example.facialrecognition.index.SearchHit;
 import com.example.facialrecognition.model.FacialTemplate;
 import com.example.facialrecognition.model.User;
 import com.example.facialrecognition.repository.FacialTemplateRepository;
 import com.example.facialrecognition.repository.UserRepository;
+import com.example.facialrecognition.repository.UserTemplateView;
+import com.example.facialrecognition.service.BatchEnrollmentService;
+import com.example.facialrecognition.service.BatchRecognitionService;
+import com.example.facialrecognition.service.EmbeddingExtractor;
+import com.example.facialrecognition.service.ExtractionOverloadedException;
+import com.example.facialrecognition.service.FacialTemplateStore;
 import com.example.facialrecognition.service.FacialRecognitionStrategy;
+import com.example.facialrecognition.service.ImageBufferPool;
+import com.example.facialrecognition.service.RecognitionMetrics;
+import com.example.facialrecognition.service.TemplateCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -16,8 +34,11 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -32,7 +53,17 @@ public class FacialRecognitionController {
 
     private final UserRepository userRepository;
     private final FacialTemplateRepository facialTemplateRepository;
+    private final FacialTemplateStore facialTemplateStore;
     private final FacialRecognitionStrategy facialRecognitionStrategy;
+    private final EmbeddingExtractor embeddingExtractor;
+    private final ImageBufferPool imageBufferPool;
+    private final EmbeddingIndex embeddingIndex;
+    private final GallerySearchEngine gallerySearchEngine;
+    private final TemplateCache templateCache;
+    private final FacialRecognitionProperties properties;
+    private final BatchEnrollmentService batchEnrollmentService;
+    private final BatchRecognitionService batchRecognitionService;
+    private final RecognitionMetrics metrics;
 
     /**
      * Endpoint for enrolling a user's facial template.
@@ -60,31 +91,40 @@ public class FacialRecognitionController {
                     });
 
             // 2. Extract facial embedding from the provided image
-            byte[] imageData = file.getBytes();
-            byte[] facialEmbedding = facialRecognitionStrategy.extractFacialEmbedding(imageData);
+            byte[] facialEmbedding = embeddingExtractor.extract(imageBufferPool.read(file));
 
             if (facialEmbedding == null) {
+                metrics.recordOutcome("enroll", "no_face");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("No face detected or failed to extract embedding from the image.");
             }
 
-            // 3. Check if user already has a facial template
-            Optional<FacialTemplate> existingTemplate = facialTemplateRepository.findByUser(user);
-            if (existingTemplate.isPresent()) {
-                // Update existing template
-                FacialTemplate templateToUpdate = existingTemplate.get();
+            // 3. Add a template, or replace the user's oldest one once they have max-per-user templates
+            List<FacialTemplate> templates = new ArrayList<>(facialTemplateRepository.findByUserOrderByEnrollmentDateAsc(user));
+            if (templates.size() >= Math.max(1, properties.getTemplates().getMaxPerUser())) {
+                // Replace the oldest template
+                FacialTemplate templateToUpdate = templates.get(0);
                 templateToUpdate.setFacialEmbedding(facialEmbedding);
                 templateToUpdate.setImageUrl(file.getOriginalFilename()); // Or a proper storage URL
                 templateToUpdate.setEnrollmentDate(java.time.LocalDateTime.now());
-                facialTemplateRepository.save(templateToUpdate);
+                metrics.persistence(false).record(() -> facialTemplateStore.save(templateToUpdate));
+                embeddingIndex.publish(templateToUpdate.getId(), username, facialEmbedding); // Committed: a failure is retried by replay
+                cacheTemplates(username, templates);
+                metrics.recordOutcome("enroll", "updated");
                 return ResponseEntity.ok("Facial template updated successfully for user: " + username);
             } else {
                 // Save new facial template
                 FacialTemplate newTemplate = new FacialTemplate(null, user, facialEmbedding, file.getOriginalFilename(),
                         LocalDateTime.now());
-                facialTemplateRepository.save(newTemplate);
+                FacialTemplate savedTemplate = metrics.persistence(false).record(() -> facialTemplateStore.save(newTemplate));
+                embeddingIndex.publish(savedTemplate.getId(), username, facialEmbedding);
+                templates.add(savedTemplate);
+                cacheTemplates(username, templates);
+                metrics.recordOutcome("enroll", "created");
                 return ResponseEntity.status(HttpStatus.CREATED).body("Facial template enrolled successfully for user: " + username);
             }
 
+        } catch (ExtractionOverloadedException e) {
+            return tooManyRequests();
         } catch (IOException e) {
             log.error("Error reading image file: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to read image file.");
@@ -94,11 +134,54 @@ public class FacialRecognitionController {
         }
     }
 
+    /**
+     * Endpoint for enrolling many users at once from a zip archive.
+     * The archive is sent as the raw request body and read as a stream, so it is not subject to the
+     * multipart size limits. Each image is enrolled under its parent directory name
+     * ({@code alice/front.jpg}) or, at the archive root, under its file name ({@code alice.jpg}).
+     *
+     * @param archive The zip archive content.
+     * @return ResponseEntity with per-image results and totals.
+     */
+    @PostMapping(value = "/enroll/batch", consumes = "application/zip")
+    public ResponseEntity<?> enrollBatchArchive(InputStream archive) {
+        try {
+            return ResponseEntity.ok(batchEnrollmentService.enrollArchive(archive));
+        } catch (IOException e) {
+            log.error("Error reading enrollment archive: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Failed to read the zip archive.");
+        } catch (Exception e) {
+            log.error("Error during batch enrollment: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An error occurred during batch enrollment.");
+        }
+    }
+
+    /**
+     * Endpoint for enrolling many users at once from uploaded images, each enrolled under its file name
+     * without extension.
+     *
+     * @param files The image files to enroll.
+     * @return ResponseEntity with per-image results and totals.
+     */
+    @PostMapping(value = "/enroll/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> enrollBatchFiles(@RequestParam("files") List<MultipartFile> files) {
+        if (files.isEmpty()) {
+            return ResponseEntity.badRequest().body("Please select at least one image file to enroll.");
+        }
+        try {
+            BatchEnrollmentResponse response = batchEnrollmentService.enrollFiles(files);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Error during batch enrollment: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An error occurred during batch enrollment.");
+        }
+    }
+
     /**
      * Endpoint for recognizing a face from an image against enrolled templates.
      *
      * @param file The image file containing the face to recognize.
-     * @return ResponseEntity with the recognized username or "No match found".
+     * @return ResponseEntity with the best matching username or "No match found".
      */
     @PostMapping("/recognize")
     public ResponseEntity<String> recognizeFacialTemplate(@RequestParam("file") MultipartFile file) {
@@ -108,26 +191,29 @@ public class FacialRecognitionController {
 
         try {
             // 1. Extract facial embedding from the provided image
-            byte[] imageData = file.getBytes();
-            byte[] queryEmbedding = facialRecognitionStrategy.extractFacialEmbedding(imageData);
+            byte[] queryEmbedding = embeddingExtractor.extract(imageBufferPool.read(file));
 
             if (queryEmbedding == null) {
+                metrics.recordOutcome("recognize", "no_face");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("No face detected or failed to extract embedding from the image.");
             }
 
-            // 2. Retrieve all stored facial templates
-            List<FacialTemplate> allTemplates = facialTemplateRepository.findAll();
+            // 2. Search the resident gallery for the top-k candidates (no database round-trip)
+            List<SearchHit> candidates = gallerySearchEngine.search(queryEmbedding, properties.getSearch().getTopK());
+            log.debug("Recognition candidates: {}", candidates);
 
-            // 3. Compare the query embedding with all stored templates
-            for (FacialTemplate storedTemplate : allTemplates) {
-                if (facialRecognitionStrategy.isMatch(queryEmbedding, storedTemplate.getFacialEmbedding())) {
-                    return ResponseEntity.ok("Match found for user: " + storedTemplate.getUser().getUsername());
-                }
+            // 3. Accept the best candidate if it clears the strategy's threshold
+            if (!candidates.isEmpty() && candidates.get(0).score() >= facialRecognitionStrategy.getMatchThreshold()) {
+                metrics.recordOutcome("recognize", "match");
+                return ResponseEntity.ok("Match found for user: " + candidates.get(0).username());
             }
 
             // 4. No match found
+            metrics.recordOutcome("recognize", "no_match");
             return ResponseEntity.ok("No match found.");
 
+        } catch (ExtractionOverloadedException e) {
+            return tooManyRequests();
         } catch (IOException e) {
             log.error("Error reading image file: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to read image file.");
@@ -137,6 +223,26 @@ public class FacialRecognitionController {
         }
     }
 
+    /**
+     * Endpoint for recognizing many faces in one request. Embeddings are extracted in parallel and all
+     * images are searched in a single pass over the gallery.
+     *
+     * @param files The image files containing the faces to recognize.
+     * @return ResponseEntity with the top-k candidates and match decision for each image, in request order.
+     */
+    @PostMapping("/recognize/batch")
+    public ResponseEntity<?> recognizeBatch(@RequestParam("files") List<MultipartFile> files) {
+        if (files.isEmpty()) {
+            return ResponseEntity.badRequest().body("Please select at least one image file to recognize.");
+        }
+        try {
+            return ResponseEntity.ok(batchRecognitionService.recognize(files, properties.getSearch().getTopK()));
+        } catch (Exception e) {
+            log.error("Error during batch facial recognition: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An error occurred during facial recognition.");
+        }
+    }
+
     /**
      * Endpoint for verifying a face against a specific user's enrolled template.
      *
@@ -155,35 +261,39 @@ public class FacialRecognitionController {
         }
 
         try {
-            // 1. Get the target user
-            Optional<User> userOptional = userRepository.findByUsername(username);
-            if (userOptional.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found: " + username);
-            }
-            User targetUser = userOptional.get();
-
-            // 2. Get the target user's facial template
-            Optional<FacialTemplate> targetTemplateOptional = facialTemplateRepository.findByUser(targetUser);
-            if (targetTemplateOptional.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No facial template found for user: " + username);
+            // 1. Get the target user's facial templates: from the near-cache, or with a single projection query
+            List<byte[]> targetEmbeddings = templateCache.get(username);
+            if (targetEmbeddings == null) {
+                List<UserTemplateView> target = userRepository.findTemplatesByUsername(username);
+                if (target.isEmpty()) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found: " + username);
+                }
+                targetEmbeddings = target.stream().map(UserTemplateView::getFacialEmbedding).filter(Objects::nonNull).toList();
+                if (targetEmbeddings.isEmpty()) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No facial template found for user: " + username);
+                }
+                templateCache.put(username, targetEmbeddings);
             }
-            FacialTemplate targetTemplate = targetTemplateOptional.get();
 
-            // 3. Extract facial embedding from the provided image
-            byte[] imageData = file.getBytes();
-            byte[] queryEmbedding = facialRecognitionStrategy.extractFacialEmbedding(imageData);
+            // 2. Extract facial embedding from the provided image
+            byte[] queryEmbedding = embeddingExtractor.extract(imageBufferPool.read(file));
 
             if (queryEmbedding == null) {
+                metrics.recordOutcome("verify", "no_face");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("No face detected or failed to extract embedding from the image.");
             }
 
-            // 4. Compare the query embedding with the target user's template
-            if (facialRecognitionStrategy.isMatch(queryEmbedding, targetTemplate.getFacialEmbedding())) {
+            // 3. Compare the query embedding with the target user's templates (a match on any of them verifies)
+            if (targetEmbeddings.stream().anyMatch(template -> facialRecognitionStrategy.isMatch(queryEmbedding, template))) {
+                metrics.recordOutcome("verify", "match");
                 return ResponseEntity.ok("Verification successful: Face matches user " + username);
             } else {
+                metrics.recordOutcome("verify", "no_match");
                 return ResponseEntity.ok("Verification failed: Face does NOT match user " + username);
             }
 
+        } catch (ExtractionOverloadedException e) {
+            return tooManyRequests();
         } catch (IOException e) {
             log.error("Error reading image file: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to read image file.");
@@ -192,4 +302,54 @@ public class FacialRecognitionController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An error occurred during facial verification.");
         }
     }
+
+    /**
+     * Endpoint for deleting all of a user's facial templates.
+     * The deletion is logged in the template change log, so other nodes drop the templates as well.
+     *
+     * @param username The username whose templates are deleted.
+     * @return ResponseEntity indicating success, or 404 if the user has no templates.
+     */
+    @DeleteMapping("/enroll/{username}")
+    public ResponseEntity<String> deleteFacialTemplates(@PathVariable("username") String username) {
+        try {
+            // 1. Find the user
+            Optional<User> user = userRepository.findByUsername(username);
+            if (user.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found: " + username);
+            }
+
+            // 2. Delete the templates and log the deletions in one transaction
+            List<FacialTemplate> deleted = metrics.persistence(false).record(() -> facialTemplateStore.deleteAll(user.get()));
+            if (deleted.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No facial template found for user: " + username);
+            }
+
+            // 3. Drop them from this node's gallery and verification cache
+            deleted.forEach(template -> embeddingIndex.retract(template.getId()));
+            templateCache.invalidate(username);
+            return ResponseEntity.ok("Deleted " + deleted.size() + " facial templates of user: " + username);
+
+        } catch (Exception e) {
+            log.error("Error deleting facial templates: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An error occurred while deleting facial templates.");
+        }
+    }
+
+    /**
+     * Refreshes the verification near-cache with a user's current templates.
+     */
+    private void cacheTemplates(String username, List<FacialTemplate> templates) {
+        templateCache.put(username, templates.stream().map(FacialTemplate::getFacialEmbedding).toList());
+    }
+
+    /**
+     * Response for requests rejected because embedding extraction is saturated; clients should back off and retry.
+     */
+    private ResponseEntity<String> tooManyRequests() {
+        log.warn("Embedding extraction at capacity; rejecting request.");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Server is busy, please retry shortly.");
+    }
 }
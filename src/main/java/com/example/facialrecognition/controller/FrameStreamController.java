@@ -0,0 +1,148 @@
+package com.example.facialrecognition.controller;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.dto.FrameEvent;
+import com.example.facialrecognition.service.FrameStreamService;
+import com.example.facialrecognition.service.ImageBuffer;
+import com.example.facialrecognition.service.ImageBufferPool;
+import com.example.facialrecognition.service.MultipartFrameReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Recognition for camera frame streams. Frames of a camera share a session in {@link FrameStreamService}, so
+ * near-duplicate frames are skipped, a face already in view is tracked without a gallery search and an event is
+ * produced only when the identity in view changes.
+ * <p>
+ * Cameras either post each frame on its own, or push a {@code multipart/x-mixed-replace} (MJPEG) stream and
+ * read the events back as newline-delimited JSON while the upload is still running.
+ */
+@RestController
+@RequestMapping("/api/v2/facial/streams")
+@Slf4j
+@RequiredArgsConstructor
+public class FrameStreamController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final FrameStreamService frameStreamService;
+    private final ImageBufferPool imageBufferPool;
+    private final FacialRecognitionProperties properties;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Endpoint for processing the next frame of a camera, sent as the request body.
+     *
+     * @param camera  The camera id; frames with the same id share a session.
+     * @param frame   The frame content.
+     * @param request The request, for the frame size.
+     * @return The identity change this frame shows, or 204 No Content if nothing changed.
+     */
+    @PostMapping(value = "/{camera}/frames", consumes = {"image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> processFrame(@PathVariable("camera") String camera, InputStream frame,
+                                          HttpServletRequest request) {
+        ImageBuffer image;
+        try {
+            image = imageBufferPool.read(frame, request.getContentLengthLong(), maxFrameSize());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (IOException e) {
+            log.error("Error reading frame: {}", e.getMessage());
+            return ResponseEntity.badRequest().body("Failed to read the frame.");
+        }
+
+        try {
+            FrameEvent event = frameStreamService.process(camera, image);
+            return event != null ? ResponseEntity.ok(event) : ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            log.error("Error processing frame of camera {}: {}", camera, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An error occurred while processing the frame.");
+        }
+    }
+
+    /**
+     * Endpoint for processing a camera's MJPEG stream. Each part must carry a {@code Content-Length} header.
+     * Events are written as one JSON object per line as soon as they occur; the response ends with the upload.
+     * Frames over {@code max-frame-size} are skipped and counted as dropped.
+     *
+     * @param camera   The camera id; frames with the same id share a session.
+     * @param stream   The stream content.
+     * @param request  The request, for the multipart boundary.
+     * @param response The response the events are written to.
+     * @throws IOException if the events cannot be written.
+     */
+    @PostMapping(value = "/{camera}", consumes = "multipart/x-mixed-replace")
+    public void processStream(@PathVariable("camera") String camera, InputStream stream,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String boundary = MediaType.parseMediaType(request.getContentType()).getParameter("boundary");
+        if (boundary == null || boundary.isEmpty()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "The stream content type has no boundary.");
+            return;
+        }
+        if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(NDJSON);
+        OutputStream events = response.getOutputStream();
+        events.flush(); // Commit the headers so the camera can read events while it uploads
+        MultipartFrameReader frames = new MultipartFrameReader(stream, boundary);
+        try {
+            while (true) {
+                ImageBuffer frame;
+                try {
+                    frame = frames.next(imageBufferPool, maxFrameSize());
+                } catch (IllegalArgumentException e) {
+                    frameStreamService.drop(camera); // Already skipped by the reader
+                    log.debug("Dropped a frame of camera {}: {}", camera, e.getMessage());
+                    continue;
+                }
+                if (frame == null) {
+                    return;
+                }
+                FrameEvent event = frameStreamService.process(camera, frame);
+                if (event != null) {
+                    events.write(objectMapper.writeValueAsBytes(event));
+                    events.write('\n');
+                    events.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The response is already committed: end the event stream and let the camera reconnect
+            log.warn("Frame stream of camera {} ended: {}", camera, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Error processing frame stream of camera {}: {}", camera, e.getMessage());
+        }
+    }
+
+    /**
+     * Endpoint for ending a camera's session, e.g. when the camera is switched off.
+     *
+     * @param camera The camera id.
+     * @return 204 No Content, or 404 if the camera has no session.
+     */
+    @DeleteMapping("/{camera}")
+    public ResponseEntity<Void> closeSession(@PathVariable("camera") String camera) {
+        return frameStreamService.close(camera) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    private long maxFrameSize() {
+        return properties.getStreams().getMaxFrameSize().toBytes();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.facialrecognition.dto;
+
+import java.util.List;
+
+/**
+ * Summary and per-item outcomes of a batch enrollment.
+ *
+ * @param total   Number of images processed.
+ * @param created Number of new facial templates.
+ * @param updated Number of replaced facial templates.
+ * @param failed  Number of images that were not enrolled (no face detected or an error).
+ * @param items   One result per image, in completion order.
+ */
+public record BatchEnrollmentResponse(int total, int created, int updated, int failed, List<EnrollmentItemResult> items) {
+
+    public static BatchEnrollmentResponse of(List<EnrollmentItemResult> items) {
+        int created = 0;
+        int updated = 0;
+        for (EnrollmentItemResult item : items) {
+            if (item.status() == EnrollmentItemResult.Status.CREATED) {
+                created++;
+            } else if (item.status() == EnrollmentItemResult.Status.UPDATED) {
+                updated++;
+            }
+        }
+        return new BatchEnrollmentResponse(items.size(), created, updated, items.size() - created - updated, items);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.facialrecognition.dto;
+
+import java.util.List;
+
+/**
+ * Summary and per-item outcomes of a batch recognition.
+ *
+ * @param total   Number of images processed.
+ * @param matched Number of images matched to an enrolled user.
+ * @param items   One result per image, in request order.
+ */
+public record BatchRecognitionResponse(int total, int matched, List<RecognitionItemResult> items) {
+
+    public static BatchRecognitionResponse of(List<RecognitionItemResult> items) {
+        int matched = 0;
+        for (RecognitionItemResult item : items) {
+            if (item.status() == RecognitionItemResult.Status.MATCH) {
+                matched++;
+            }
+        }
+        return new BatchRecognitionResponse(items.size(), matched, items);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.facialrecognition.dto;
+
+/**
+ * Outcome of enrolling a single image as part of a batch.
+ *
+ * @param item     The archive entry or uploaded file name.
+ * @param username The username derived from the item name, or null if none could be derived.
+ * @param status   What happened to the item.
+ * @param message  A human-readable detail, mainly for failures.
+ */
+public record EnrollmentItemResult(String item, String username, Status status, String message) {
+
+    public enum Status {
+        CREATED, UPDATED, NO_FACE, FAILED
+    }
+}
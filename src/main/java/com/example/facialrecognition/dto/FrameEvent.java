@@ -0,0 +1,17 @@
+package com.example.facialrecognition.dto;
+
+/**
+ * A change in who a camera sees, emitted only when the identity in view changes.
+ *
+ * @param camera   The camera (stream session) id.
+ * @param frame    The number of the frame the change was seen in, counted from 1 within the session.
+ * @param type     What the camera now sees.
+ * @param username The matched username for {@code MATCH}, otherwise null.
+ * @param score    The best gallery similarity of the face in view, or null when no face is in view.
+ */
+public record FrameEvent(String camera, long frame, Type type, String username, Double score) {
+
+    public enum Type {
+        MATCH, UNKNOWN, CLEARED
+    }
+}
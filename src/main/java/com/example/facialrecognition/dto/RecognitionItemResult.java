@@ -0,0 +1,22 @@
+package com.example.facialrecognition.dto;
+
+import com.example.facialrecognition.index.SearchHit;
+
+import java.util.List;
+
+/**
+ * Outcome of recognizing a single image, on its own or as part of a batch.
+ *
+ * @param item       The uploaded file name, or null for an image sent as the raw request body.
+ * @param status     What happened to the item.
+ * @param username   The matched username when the best candidate clears the match threshold, otherwise null.
+ * @param candidates The top-k gallery candidates with their scores, best first.
+ * @param message    A human-readable detail, mainly for failures.
+ */
+public record RecognitionItemResult(String item, Status status, String username, List<SearchHit> candidates,
+                                    String message) {
+
+    public enum Status {
+        MATCH, NO_MATCH, NO_FACE, FAILED
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.facialrecognition.dto;
+
+/**
+ * Outcome of verifying an image against a user's enrolled templates.
+ *
+ * @param username The username verified against.
+ * @param status   What happened to the request.
+ * @param score    The best cosine similarity between the image and the user's templates, or null if none was computed.
+ * @param message  A human-readable detail, mainly for failures.
+ */
+public record VerificationResult(String username, Status status, Double score, String message) {
+
+    public enum Status {
+        MATCH, NO_MATCH, NO_FACE, NOT_FOUND, FAILED
+    }
+}
@@ -0,0 +1,938 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.model.TemplateChange;
+import com.example.facialrecognition.repository.FacialTemplateRepository;
+import com.example.facialrecognition.repository.TemplateChangeRepository;
+import com.example.facialrecognition.repository.TemplateEmbeddingView;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import com.example.facialrecognition.vector.EmbeddingQuantizer;
+import com.example.facialrecognition.vector.ProductQuantizer;
+import com.example.facialrecognition.vector.ScalarQuantizer;
+import com.example.facialrecognition.vector.VectorScorer;
+import com.example.facialrecognition.vector.VectorScorers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Resident, in-memory index of every enrolled facial embedding, grouped by user.
+ * <p>
+ * Embeddings are decoded once into L2-normalized float vectors and kept as contiguous template rows
+ * ({@link VectorRows}) next to parallel arrays of template ids. The index is loaded once at startup and
+ * then kept in sync incrementally by enrollment, so recognition never has to go through JPA.
+ * <p>
+ * A user may have several templates (angles, lighting). Searches run in two steps so their cost stays
+ * near one vector per user rather than one per template:
+ * <ol>
+ *     <li>scan: every user is scored once, against their single template row or, for users with several
+ *     templates, against the normalized centroid of those templates (kept on the heap);</li>
+ *     <li>refine: the best {@code k * refine-factor} users are re-scored against each of their templates and
+ *     ranked by their best template, which is the template reported in the hit.</li>
+ * </ol>
+ * Engines in this package address users by <em>slot</em>; template rows are internal to the index.
+ * <p>
+ * With {@code facial.recognition.store.enabled} the template rows live off-heap in a memory-mapped,
+ * append-only {@link EmbeddingSegmentStore}; startup then maps the segment as a snapshot instead of reading
+ * the database, and replays the template change log from the snapshot's checkpoint.
+ * <p>
+ * Other nodes' enrollments reach the index through that change log ({@code template_changes}, written in
+ * the same transaction as the templates): {@link #replayChanges} applies the changes past the checkpoint,
+ * and is run periodically by the {@code TemplateChangeTailer}. This node's own changes are applied as they
+ * commit ({@link #publish}, {@link #retract}); one that fails to apply is kept pending and retried by the next replay.
+ * <p>
+ * When quantization is enabled ({@code facial.recognition.quantization.mode}), every user vector also gets
+ * a compact int8 or product-quantized code stored in a second contiguous array. Exact searches then scan
+ * the codes and refine the best {@code k * rerank-factor} users at full precision.
+ * <p>
+ * Exact scans are sharded across cores by a {@link ShardedScanner} ({@code facial.recognition.search.scan}).
+ * <p>
+ * Reads (scans) run concurrently under a read lock; enrollments take the write lock briefly.
+ */
+@Component
+@Slf4j
+public class EmbeddingIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final String SEGMENT_NAME = "embeddings";
+
+    private final FacialTemplateRepository facialTemplateRepository;
+    private final TemplateChangeRepository templateChangeRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final FacialRecognitionProperties properties;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> rowsByTemplateId = new HashMap<>();
+    private final Map<String, Integer> slotsByUsername = new HashMap<>();
+    private final List<IndexListener> listeners = new ArrayList<>();
+
+    private final VectorScorer scorer = VectorScorers.get();
+    private final EmbeddingSegmentStore segmentStore; // Null when the off-heap store is disabled
+    private final VectorRows rows;
+    private final ShardedScanner scanner;
+
+    // Template rows
+    private long[] templateIds = new long[INITIAL_CAPACITY];
+    private int[] rowSlots = new int[INITIAL_CAPACITY]; // Row -> user slot, -1 once removed
+    private int dimension = -1;
+    private int rowCount; // Rows allocated, including removed ones
+
+    // User slots
+    private String[] usernames = new String[INITIAL_CAPACITY];
+    private int[][] slotRows = new int[INITIAL_CAPACITY][]; // User slot -> template rows
+    private int[] slotCentroids = new int[INITIAL_CAPACITY]; // User slot -> centroid, or -1 for single-template users
+    private int slotCount;
+    private int emptySlotCount; // Users whose templates were all removed
+
+    // Centroids of users with several templates, row-major
+    private float[] centroids = new float[0];
+    private int[] centroidSlots = new int[0]; // Centroid -> user slot
+    private int centroidCount;
+
+    private EmbeddingQuantizer quantizer; // Null until the gallery is large enough to train one
+    private byte[] codes = new byte[0];   // slotCount * quantizer.codeSize() bytes
+
+    private long checkpoint; // Last template change applied
+    private final Set<Long> unpublished = ConcurrentHashMap.newKeySet(); // This node's committed changes not applied yet
+
+    public EmbeddingIndex(FacialTemplateRepository facialTemplateRepository,
+                          TemplateChangeRepository templateChangeRepository,
+                          PlatformTransactionManager transactionManager,
+                          FacialRecognitionProperties properties) {
+        this.facialTemplateRepository = facialTemplateRepository;
+        this.templateChangeRepository = templateChangeRepository;
+        this.transactionManager = transactionManager;
+        this.properties = properties;
+        FacialRecognitionProperties.Store store = properties.getStore();
+        this.segmentStore = store.isEnabled() ? new EmbeddingSegmentStore(Path.of(store.getDirectory()), SEGMENT_NAME) : null;
+        this.rows = segmentStore != null ? segmentStore : new HeapVectorRows();
+        this.scanner = new ShardedScanner(properties.getSearch().getScan());
+    }
+
+    /**
+     * Loads all stored templates into the index, preferring the mapped segment (plus the change log since it)
+     * over the database.
+     */
+    @PostConstruct
+    void load() {
+        long start = System.nanoTime();
+        boolean restored = restoreFromSegment();
+        if (!restored) {
+            loadFromDatabase();
+        }
+        log.info("Embedding index loaded {} templates of {} users from {} in {} ms", size(), userCount(),
+                restored ? "embedding segment" : "database", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        scanner.close();
+        lock.writeLock().lock();
+        try {
+            rows.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Maps the persisted segment, if any, replays the change log past its checkpoint, and adopts it when
+     * the result agrees with the database.
+     *
+     * @return True if the index was restored from the segment.
+     */
+    private boolean restoreFromSegment() {
+        if (segmentStore == null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            EmbeddingSegmentStore.Restored restored = segmentStore.open();
+            if (restored == null) {
+                segmentStore.reset();
+                return false;
+            }
+            dimension = restored.dimension();
+            checkpoint = segmentStore.checkpoint();
+            for (int row = 0; row < restored.templateIds().length; row++) {
+                addRow(row, restored.templateIds()[row], restored.usernames()[row]);
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                updateCentroid(slot);
+            }
+            trainQuantizerIfReady();
+
+            if (!catchUp()) {
+                clear();
+                segmentStore.reset();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to map embedding segment, rebuilding it from the database: {}", e.getMessage());
+            try {
+                segmentStore.reset();
+            } catch (IOException resetFailure) {
+                throw new UncheckedIOException(resetFailure);
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replays the change log on top of a restored snapshot.
+     *
+     * @return False if the snapshot cannot be brought up to date: the log no longer reaches back to its
+     * checkpoint, or the result does not match the number of templates in the database.
+     */
+    private boolean catchUp() {
+        Long oldestChange = templateChangeRepository.findOldestId();
+        if (oldestChange != null && checkpoint < oldestChange - 1) {
+            log.warn("Embedding segment checkpoint {} predates the retained change log (oldest change {}); rebuilding it from the database.",
+                    checkpoint, oldestChange);
+            return false;
+        }
+        Set<String> changed = replayChanges(null);
+        long persistedTemplates = facialTemplateRepository.count();
+        if (size() != persistedTemplates) {
+            log.warn("Embedding segment holds {} templates after replay but the database has {}; rebuilding it from the database.",
+                    size(), persistedTemplates);
+            return false;
+        }
+        log.info("Embedding segment caught up with the change log to change {} ({} users changed).", checkpoint, changed.size());
+        return true;
+    }
+
+    /**
+     * Streams every stored template from the database into the index.
+     * Uses a streaming projection so entities are never hydrated. The checkpoint is the latest change
+     * logged before the load, so changes committed while loading are replayed afterwards.
+     */
+    private void loadFromDatabase() {
+        Long latestChange = templateChangeRepository.findLatestId();
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<TemplateEmbeddingView> rows = facialTemplateRepository.streamAllEmbeddings()) {
+                rows.forEach(row -> {
+                    try {
+                        upsert(row.getId(), row.getUsername(), row.getFacialEmbedding());
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Skipping template {} while loading embedding index: {}", row.getId(), e.getMessage());
+                    }
+                });
+            }
+        });
+        checkpoint(latestChange != null ? latestChange : 0);
+    }
+
+    /**
+     * Applies the template change log past the checkpoint, in order and in batches, then advances the checkpoint.
+     * <p>
+     * An upsert re-reads the template's current embedding (a template deleted since is removed instead), so
+     * replaying a change twice is harmless. Change ids are allocated before commit, so a missing id may belong
+     * to a transaction still in flight: replay stops at such a gap until the change after it is older than
+     * {@code gap-timeout}, after which the missing id is treated as rolled back.
+     *
+     * @param skippedOrigin Node whose changes are skipped because it applied them itself; null to apply all.
+     * @return The usernames whose templates changed.
+     */
+    public synchronized Set<String> replayChanges(String skippedOrigin) {
+        FacialRecognitionProperties.Changes settings = properties.getChanges();
+        Set<String> changedUsers = new LinkedHashSet<>();
+        retryUnpublished(changedUsers);
+        while (true) {
+            List<TemplateChange> batch = templateChangeRepository.findByIdGreaterThanOrderByIdAsc(checkpoint,
+                    Limit.of(Math.max(1, settings.getBatchSize())));
+            LocalDateTime settled = LocalDateTime.now().minus(settings.getGapTimeout());
+            List<TemplateChange> ready = new ArrayList<>(batch.size());
+            long next = checkpoint + 1;
+            for (TemplateChange change : batch) {
+                if (change.getId() != next && change.getChangedAt().isAfter(settled)) {
+                    break; // The missing ids may still commit
+                }
+                ready.add(change);
+                next = change.getId() + 1;
+            }
+            if (ready.isEmpty()) {
+                return changedUsers;
+            }
+
+            List<Long> upserted = ready.stream()
+                    .filter(change -> change.getType() == TemplateChange.Type.UPSERT && !change.getOrigin().equals(skippedOrigin))
+                    .map(TemplateChange::getTemplateId)
+                    .distinct()
+                    .toList();
+            Map<Long, TemplateEmbeddingView> current = new HashMap<>();
+            if (!upserted.isEmpty()) {
+                facialTemplateRepository.findEmbeddingsByIdIn(upserted).forEach(view -> current.put(view.getId(), view));
+            }
+            Set<Long> applied = new HashSet<>();
+            for (TemplateChange change : ready) {
+                if (change.getOrigin().equals(skippedOrigin) || !applied.add(change.getTemplateId())) {
+                    continue; // Applied by this node, or already brought to its current state in this batch
+                }
+                TemplateEmbeddingView template = current.get(change.getTemplateId());
+                if (template == null) {
+                    remove(change.getTemplateId());
+                } else {
+                    try {
+                        upsert(template.getId(), template.getUsername(), template.getFacialEmbedding());
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Skipping template {} while replaying change {}: {}", template.getId(), change.getId(), e.getMessage());
+                    }
+                }
+                changedUsers.add(change.getUsername());
+            }
+            checkpoint(ready.get(ready.size() - 1).getId());
+            if (ready.size() < batch.size() || batch.size() < settings.getBatchSize()) {
+                return changedUsers;
+            }
+        }
+    }
+
+    /**
+     * Applies the committed templates this node failed to publish, from their current state in the database.
+     * A template that still fails on I/O stays pending; one that can never be indexed is dropped, as in replay.
+     */
+    private void retryUnpublished(Set<String> changedUsers) {
+        if (unpublished.isEmpty()) {
+            return;
+        }
+        List<Long> templateIds = List.copyOf(unpublished);
+        Map<Long, TemplateEmbeddingView> current = new HashMap<>();
+        facialTemplateRepository.findEmbeddingsByIdIn(templateIds).forEach(view -> current.put(view.getId(), view));
+        for (Long templateId : templateIds) {
+            TemplateEmbeddingView template = current.get(templateId);
+            if (template == null) {
+                remove(templateId);
+            } else {
+                try {
+                    upsert(template.getId(), template.getUsername(), template.getFacialEmbedding());
+                    changedUsers.add(template.getUsername());
+                } catch (IllegalArgumentException e) {
+                    log.warn("Skipping unpublished template {}: {}", templateId, e.getMessage());
+                }
+            }
+            unpublished.remove(templateId);
+        }
+        log.info("Retried {} templates whose indexing had failed on commit.", templateIds.size());
+    }
+
+    /**
+     * @return The id of the last template change reflected in the index.
+     */
+    public long checkpoint() {
+        lock.readLock().lock();
+        try {
+            return checkpoint;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void checkpoint(long change) {
+        lock.writeLock().lock();
+        try {
+            checkpoint = change;
+            if (segmentStore != null && dimension >= 0) {
+                segmentStore.checkpoint(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Publishes a template this node has just committed. Unlike {@link #upsert}, a failure does not propagate:
+     * the template is already stored, so it is kept pending and the next {@link #replayChanges} indexes it
+     * although its change log entry carries this node's id.
+     *
+     * @param templateId The persisted FacialTemplate id.
+     * @param username   The username owning the template.
+     * @param embedding  The encoded facial embedding.
+     * @return True if the template is searchable now, false if publication was deferred to the next replay.
+     */
+    public boolean publish(long templateId, String username, byte[] embedding) {
+        try {
+            upsert(templateId, username, embedding);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Template {} of user {} was saved but could not be indexed; deferring it to replay: {}",
+                    templateId, username, e.getMessage());
+            unpublished.add(templateId);
+            return false;
+        }
+    }
+
+    /**
+     * Withdraws a template this node has just deleted; a failure is deferred to the next replay, as in {@link #publish}.
+     *
+     * @param templateId The deleted FacialTemplate id.
+     * @return True if the index no longer holds the template, false if removal was deferred.
+     */
+    public boolean retract(long templateId) {
+        try {
+            remove(templateId);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Template {} was deleted but could not be removed from the index; deferring it to replay: {}",
+                    templateId, e.getMessage());
+            unpublished.add(templateId);
+            return false;
+        }
+    }
+
+    /**
+     * Inserts a template into the index, or replaces its embedding if it is already present.
+     * The owning user's centroid is updated accordingly.
+     *
+     * @param templateId The persisted FacialTemplate id.
+     * @param username   The username owning the template.
+     * @param embedding  The encoded facial embedding; must match the dimension of the embeddings already indexed.
+     * @throws IllegalArgumentException if the embedding is null, malformed, or its dimension does not match the index,
+     *                                  or if the template is already indexed for another user.
+     * @throws UncheckedIOException     if the embedding could not be appended to the segment store.
+     */
+    public void upsert(long templateId, String username, byte[] embedding) {
+        if (embedding == null) {
+            throw new IllegalArgumentException("Embedding cannot be null.");
+        }
+        float[] vector = EmbeddingCodec.decode(embedding);
+        if (!EmbeddingCodec.normalize(vector)) {
+            throw new IllegalArgumentException("Embedding has zero norm.");
+        }
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                rows.initialize(vector.length);
+                dimension = vector.length;
+            } else if (vector.length != dimension) {
+                throw new IllegalArgumentException("Embedding dimension " + vector.length
+                        + " does not match index dimension " + dimension + ".");
+            }
+
+            Integer existingRow = rowsByTemplateId.get(templateId);
+            if (existingRow != null && !usernames[rowSlots[existingRow]].equals(username)) {
+                throw new IllegalArgumentException("Template " + templateId + " is indexed for another user.");
+            }
+            int row = existingRow != null ? existingRow : rowCount;
+            if (existingRow == null) {
+                ensureRowCapacity(rowCount + 1);
+            }
+            rows.write(row, templateId, username, vector); // May fail on I/O; nothing else has changed yet
+            int slotsBefore = slotCount;
+            int slot = existingRow != null ? rowSlots[row] : addRow(row, templateId, username);
+            boolean inserted = slotCount > slotsBefore;
+            updateCentroid(slot);
+            if (quantizer != null) {
+                encodeSlot(quantizer, codes, slot);
+            } else if (inserted) {
+                trainQuantizerIfReady();
+            }
+            for (IndexListener listener : listeners) {
+                listener.onUpsert(slot, inserted);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist embedding for template " + templateId, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a template from the index, e.g. after it was deleted on another node.
+     * The owning user's centroid is updated; a user left without templates no longer appears in results.
+     *
+     * @param templateId The FacialTemplate id.
+     * @return True if the template was indexed.
+     * @throws UncheckedIOException if the removal could not be recorded in the segment store.
+     */
+    public boolean remove(long templateId) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsByTemplateId.get(templateId);
+            if (row == null) {
+                return false;
+            }
+            int slot = rowSlots[row];
+            int[] remainingRows = Arrays.stream(slotRows[slot]).filter(templateRow -> templateRow != row).toArray();
+            float[] lastVector = null;
+            if (remainingRows.length == 0) {
+                lastVector = new float[dimension]; // Kept as the user's centroid so ANN graphs can still route through them
+                rows.read(row, lastVector, 0);
+            }
+            rows.delete(row); // May fail on I/O; nothing else has changed yet
+            rowsByTemplateId.remove(templateId);
+            rowSlots[row] = -1;
+            slotRows[slot] = remainingRows;
+            if (lastVector != null) {
+                int centroid = addCentroid(slot); // Before reading centroids, which it may grow
+                System.arraycopy(lastVector, 0, centroids, centroid * dimension, dimension);
+                emptySlotCount++;
+                return true;
+            }
+            updateCentroid(slot);
+            if (quantizer != null) {
+                encodeSlot(quantizer, codes, slot);
+            }
+            for (IndexListener listener : listeners) {
+                listener.onUpsert(slot, false);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to remove template " + templateId, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Exact search: scores the query against every indexed user and keeps the k best.
+     * With quantization enabled the scan runs over the compressed codes; either way the best
+     * candidates are refined against each of their templates at full precision.
+     *
+     * @param query An L2-normalized query vector.
+     * @param k     The maximum number of candidates to return.
+     * @return Up to k candidates (one per user, with their best template) ordered by descending cosine similarity.
+     */
+    public List<SearchHit> search(float[] query, int k) {
+        return searchBatch(new float[][]{query}, k).get(0);
+    }
+
+    /**
+     * Exact search for several queries in a single pass over the gallery.
+     * <p>
+     * Rows are visited once per batch rather than once per query: each row (or code) is loaded and
+     * then scored against every query while it is still in cache, like a blocked matrix product of
+     * the gallery with the query matrix. The gallery is split into shards scored in parallel.
+     * Queries whose dimension does not match get no candidates.
+     *
+     * @param queries L2-normalized query vectors.
+     * @param k       The maximum number of candidates to return per query.
+     * @return For each query, in order, up to k candidates ordered by descending cosine similarity.
+     */
+    public List<List<SearchHit>> searchBatch(float[][] queries, int k) {
+        lock.readLock().lock();
+        try {
+            List<List<SearchHit>> results = new ArrayList<>(queries.length);
+            if (slotCount == 0) {
+                for (int q = 0; q < queries.length; q++) {
+                    results.add(List.of());
+                }
+                return results;
+            }
+
+            // Pack matching queries into one contiguous matrix, query j at j * dimension
+            int[] positions = new int[queries.length];
+            int count = 0;
+            for (int q = 0; q < queries.length; q++) {
+                positions[q] = queries[q].length == dimension ? count++ : -1;
+            }
+            float[] matrix = new float[count * dimension];
+            for (int q = 0; q < queries.length; q++) {
+                if (positions[q] >= 0) {
+                    System.arraycopy(queries[q], 0, matrix, positions[q] * dimension, dimension);
+                }
+            }
+
+            // 1. Shortlist users, from their full-precision vectors or their codes
+            int factor = quantizer == null
+                    ? properties.getTemplates().getRefineFactor()
+                    : properties.getQuantization().getRerankFactor();
+            int capacity = k * Math.max(1, factor);
+            TopKCollector[] shortlists = quantizer == null
+                    ? scanSlots(matrix, count, capacity)
+                    : scanCodes(matrix, count, capacity);
+
+            // 2. Refine each shortlist against the users' individual templates
+            for (int q = 0; q < queries.length; q++) {
+                results.add(positions[q] >= 0 ? refine(matrix, positions[q] * dimension, shortlists[positions[q]], k) : List.of());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Full-precision pass: every user vector is scored against all queries before moving to the next one.
+     * Single-template users are scored straight from their template row; the others from their centroid.
+     * Shards cover the physical rows followed by the centroids.
+     */
+    private TopKCollector[] scanSlots(float[] matrix, int queryCount, int capacity) {
+        int physicalRows = rows.physicalRows();
+        return scanner.scan(physicalRows + centroidCount, dimension * Float.BYTES, queryCount, capacity, (from, to, topK) -> {
+            rows.scan(Math.min(from, physicalRows), Math.min(to, physicalRows), (block, blockOffset, count, blockRows, rowsOffset) -> {
+                for (int i = 0, rowOffset = blockOffset; i < count; i++, rowOffset += dimension) {
+                    int slot = rowSlots[blockRows[rowsOffset + i]];
+                    if (slot < 0 || slotCentroids[slot] >= 0) {
+                        continue; // Removed, or scored through the centroid
+                    }
+                    for (int q = 0; q < queryCount; q++) {
+                        topK[q].offer(slot, scorer.dot(matrix, q * dimension, block, rowOffset, dimension));
+                    }
+                }
+            });
+            for (int c = Math.max(from, physicalRows) - physicalRows; c < to - physicalRows; c++) {
+                int slot = centroidSlots[c];
+                if (slotRows[slot].length == 0) {
+                    continue; // User without templates
+                }
+                for (int q = 0; q < queryCount; q++) {
+                    topK[q].offer(slot, scorer.dot(matrix, q * dimension, centroids, c * dimension, dimension));
+                }
+            }
+        });
+    }
+
+    /**
+     * Quantized pass: shortlists users from the codes, each code read once for all queries.
+     */
+    private TopKCollector[] scanCodes(float[] matrix, int queryCount, int capacity) {
+        EmbeddingQuantizer encoder = quantizer;
+        int codeSize = encoder.codeSize();
+        return scanner.scan(slotCount, codeSize, queryCount, capacity, (from, to, shortlists) -> {
+            // Code scorers are not thread-safe, so each shard prepares its own
+            EmbeddingQuantizer.CodeScorer[] codeScorers = new EmbeddingQuantizer.CodeScorer[queryCount];
+            float[] query = new float[dimension];
+            for (int q = 0; q < queryCount; q++) {
+                System.arraycopy(matrix, q * dimension, query, 0, dimension);
+                codeScorers[q] = encoder.prepare(query);
+            }
+            for (int slot = from, offset = from * codeSize; slot < to; slot++, offset += codeSize) {
+                if (slotRows[slot].length == 0) {
+                    continue; // User without templates
+                }
+                for (int q = 0; q < queryCount; q++) {
+                    shortlists[q].offer(slot, codeScorers[q].score(codes, offset));
+                }
+            }
+        });
+    }
+
+    /**
+     * Re-scores shortlisted users against each of their templates; a user scores as their best template.
+     * Caller must hold the read lock.
+     *
+     * @param query       The query vectors.
+     * @param queryOffset Start of the query in {@code query}.
+     * @param shortlist   Candidate user slots.
+     * @param k           The maximum number of hits to return.
+     * @return Up to k hits (the best template of each user) ordered by descending cosine similarity.
+     */
+    List<SearchHit> refine(float[] query, int queryOffset, TopKCollector shortlist, int k) {
+        TopKCollector best = new TopKCollector(k);
+        for (int i = 0; i < shortlist.size(); i++) {
+            int[] templateRows = slotRows[shortlist.slotAt(i)];
+            if (templateRows.length == 0) {
+                continue; // User without templates, reached through an ANN graph
+            }
+            int bestRow = templateRows[0];
+            float bestScore = rows.dot(query, queryOffset, bestRow);
+            for (int t = 1; t < templateRows.length; t++) {
+                float score = rows.dot(query, queryOffset, templateRows[t]);
+                if (score > bestScore) {
+                    bestRow = templateRows[t];
+                    bestScore = score;
+                }
+            }
+            best.offer(bestRow, bestScore);
+        }
+        return best.toHits(this);
+    }
+
+    /**
+     * @return The number of templates currently indexed.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowsByTemplateId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of users with at least one indexed template.
+     */
+    public int userCount() {
+        lock.readLock().lock();
+        try {
+            return slotCount - emptySlotCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a listener and replays every user slot already indexed to it, atomically with respect to upserts.
+     */
+    void subscribe(IndexListener listener) {
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                listener.onUpsert(slot, true);
+            }
+            listeners.add(listener);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // --- User slot accessors for engines in this package; callers must hold the read (or write) lock ---
+
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return The dot product of a query slice with the vector of a user slot (their template or centroid).
+     */
+    float dot(float[] query, int queryOffset, int slot) {
+        int centroid = slotCentroids[slot];
+        return centroid < 0
+                ? rows.dot(query, queryOffset, slotRows[slot][0])
+                : scorer.dot(query, queryOffset, centroids, centroid * dimension, dimension);
+    }
+
+    /**
+     * Copies the vector of a user slot (their template or centroid) into {@code destination} at {@code offset}.
+     */
+    void readVector(int slot, float[] destination, int offset) {
+        int centroid = slotCentroids[slot];
+        if (centroid < 0) {
+            rows.read(slotRows[slot][0], destination, offset);
+        } else {
+            System.arraycopy(centroids, centroid * dimension, destination, offset, dimension);
+        }
+    }
+
+    // --- Template row accessors, used to resolve hits ---
+
+    long templateIdAt(int row) {
+        return templateIds[row];
+    }
+
+    String usernameAt(int row) {
+        return usernames[rowSlots[row]];
+    }
+
+    /**
+     * Records a new template row and attaches it to its user, creating the user slot if needed.
+     *
+     * @return The user slot.
+     */
+    private int addRow(int row, long templateId, String username) {
+        ensureRowCapacity(row + 1);
+        templateIds[row] = templateId;
+        rowsByTemplateId.put(templateId, row);
+        rowCount = Math.max(rowCount, row + 1);
+
+        Integer existingSlot = slotsByUsername.get(username);
+        int slot;
+        if (existingSlot == null) {
+            slot = slotCount++;
+            ensureSlotCapacity(slotCount);
+            usernames[slot] = username;
+            slotRows[slot] = new int[]{row};
+            slotCentroids[slot] = -1;
+            slotsByUsername.put(username, slot);
+        } else {
+            slot = existingSlot;
+            if (slotRows[slot].length == 0) {
+                emptySlotCount--; // Re-enrolled after all their templates were removed
+            }
+            int[] templateRows = Arrays.copyOf(slotRows[slot], slotRows[slot].length + 1);
+            templateRows[templateRows.length - 1] = row;
+            slotRows[slot] = templateRows;
+        }
+        rowSlots[row] = slot;
+        return slot;
+    }
+
+    /**
+     * Recomputes the normalized centroid of a user with several templates; single-template users need none.
+     * A user without templates keeps the vector set by {@link #remove}.
+     */
+    private void updateCentroid(int slot) {
+        int[] templateRows = slotRows[slot];
+        if (templateRows.length == 0) {
+            return;
+        }
+        if (templateRows.length == 1) {
+            dropCentroid(slot);
+            return;
+        }
+        if (slotCentroids[slot] < 0) {
+            addCentroid(slot);
+        }
+        float[] sum = new float[dimension];
+        float[] row = new float[dimension];
+        for (int templateRow : templateRows) {
+            rows.read(templateRow, row, 0);
+            for (int d = 0; d < dimension; d++) {
+                sum[d] += row[d];
+            }
+        }
+        if (!EmbeddingCodec.normalize(sum)) {
+            rows.read(templateRows[templateRows.length - 1], sum, 0); // Opposite templates; fall back to the latest
+        }
+        System.arraycopy(sum, 0, centroids, slotCentroids[slot] * dimension, dimension);
+    }
+
+    /**
+     * @return The centroid allocated to the user slot.
+     */
+    private int addCentroid(int slot) {
+        if (centroidCount == centroidSlots.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, centroidSlots.length * 2);
+            centroidSlots = Arrays.copyOf(centroidSlots, capacity);
+            centroids = Arrays.copyOf(centroids, capacity * dimension);
+        }
+        centroidSlots[centroidCount] = slot;
+        slotCentroids[slot] = centroidCount;
+        return centroidCount++;
+    }
+
+    /**
+     * Releases the centroid of a user slot, moving the last centroid into its place.
+     */
+    private void dropCentroid(int slot) {
+        int centroid = slotCentroids[slot];
+        if (centroid < 0) {
+            return;
+        }
+        int last = --centroidCount;
+        if (centroid != last) {
+            System.arraycopy(centroids, last * dimension, centroids, centroid * dimension, dimension);
+            centroidSlots[centroid] = centroidSlots[last];
+            slotCentroids[centroidSlots[centroid]] = centroid;
+        }
+        slotCentroids[slot] = -1;
+    }
+
+    /**
+     * Drops everything indexed, e.g. before rebuilding from the database.
+     */
+    private void clear() {
+        rowsByTemplateId.clear();
+        slotsByUsername.clear();
+        templateIds = new long[INITIAL_CAPACITY];
+        rowSlots = new int[INITIAL_CAPACITY];
+        dimension = -1;
+        rowCount = 0;
+        usernames = new String[INITIAL_CAPACITY];
+        slotRows = new int[INITIAL_CAPACITY][];
+        slotCentroids = new int[INITIAL_CAPACITY];
+        slotCount = 0;
+        emptySlotCount = 0;
+        centroids = new float[0];
+        centroidSlots = new int[0];
+        centroidCount = 0;
+        quantizer = null;
+        codes = new byte[0];
+        checkpoint = 0;
+    }
+
+    private void encodeSlot(EmbeddingQuantizer encoder, byte[] destination, int slot) {
+        float[] vector = new float[dimension];
+        readVector(slot, vector, 0);
+        encoder.encode(vector, 0, destination, slot * encoder.codeSize());
+    }
+
+    private void ensureRowCapacity(int required) {
+        if (required <= templateIds.length) {
+            return;
+        }
+        int capacity = Math.max(required, templateIds.length * 2);
+        templateIds = Arrays.copyOf(templateIds, capacity);
+        rowSlots = Arrays.copyOf(rowSlots, capacity);
+    }
+
+    private void ensureSlotCapacity(int required) {
+        if (required <= usernames.length) {
+            return;
+        }
+        int capacity = Math.max(required, usernames.length * 2);
+        usernames = Arrays.copyOf(usernames, capacity);
+        slotRows = Arrays.copyOf(slotRows, capacity);
+        slotCentroids = Arrays.copyOf(slotCentroids, capacity);
+        if (quantizer != null) {
+            codes = Arrays.copyOf(codes, capacity * quantizer.codeSize());
+        }
+    }
+
+    /**
+     * Trains the configured quantizer once the gallery reaches the training size (in users), then encodes every
+     * user vector. Runs at most once, under the write lock.
+     */
+    private void trainQuantizerIfReady() {
+        FacialRecognitionProperties.Quantization settings = properties.getQuantization();
+        if (settings.getMode() == FacialRecognitionProperties.QuantizationMode.NONE || slotCount < settings.getTrainingSize()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int sampleSize = Math.min(slotCount, settings.getTrainingSize());
+        float[] sampleRows = new float[sampleSize * dimension];
+        int[] sample = new int[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            readVector((int) ((long) i * slotCount / sampleSize), sampleRows, i * dimension); // Evenly strided over the gallery
+            sample[i] = i;
+        }
+
+        EmbeddingQuantizer trained;
+        if (settings.getMode() == FacialRecognitionProperties.QuantizationMode.PQ) {
+            try {
+                trained = ProductQuantizer.train(sampleRows, sample, dimension, settings.getPqSubspaces(), settings.getPqIterations());
+            } catch (IllegalArgumentException e) {
+                log.warn("Product quantization unavailable ({}), falling back to int8.", e.getMessage());
+                trained = ScalarQuantizer.train(sampleRows, sample, dimension);
+            }
+        } else {
+            trained = ScalarQuantizer.train(sampleRows, sample, dimension);
+        }
+
+        byte[] encoded = new byte[usernames.length * trained.codeSize()];
+        for (int slot = 0; slot < slotCount; slot++) {
+            encodeSlot(trained, encoded, slot);
+        }
+        codes = encoded;
+        quantizer = trained;
+        log.info("Trained {} quantizer on {} users in {} ms ({} bytes per code, {}x smaller than float32)",
+                trained.getClass().getSimpleName(), sample.length, (System.nanoTime() - start) / 1_000_000,
+                trained.codeSize(), dimension * Float.BYTES / trained.codeSize());
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.vector.VectorScorer;
+import com.example.facialrecognition.vector.VectorScorers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent, append-only embedding segment accessed through {@link FileChannel#map memory mapping}.
+ * <p>
+ * Files (in the configured directory):
+ * <ul>
+ *     <li>{@code <name>.seg}: a 64-byte header (magic, version, dimension, record count, change-log
+ *     checkpoint) followed by fixed-size little-endian records {@code [long templateId][float × dimension]}.
+ *     The file is mapped in 64 MB chunks, so rows stay off the Java heap and restarts only need to map it.</li>
+ *     <li>{@code <name>.ids}: the sidecar, an append-only log of {@code (templateId, username)} pairs.</li>
+ * </ul>
+ * Re-enrolling a template appends a new record; the latest record per template id wins and older
+ * ones are skipped by scans. Deleting a template appends a tombstone record whose id is the bitwise
+ * complement of the template id. The segment is compacted on open once dead records outnumber live ones.
+ */
+@Slf4j
+final class EmbeddingSegmentStore implements VectorRows {
+
+    private static final int MAGIC = 0x46534547; // "FSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_COUNT_OFFSET = 16;
+    private static final int CHECKPOINT_OFFSET = 24;
+    private static final long CHUNK_BYTES = 64L << 20;
+    private static final int SCAN_BLOCK_ROWS = 64;
+    private static final int MIN_DEAD_RECORDS_TO_COMPACT = 1024;
+
+    private final Path directory;
+    private final String name;
+    private final Path segmentPath;
+    private final Path sidecarPath;
+    private final VectorScorer scorer = VectorScorers.get();
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final List<FloatBuffer> chunkFloats = new ArrayList<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private DataOutputStream sidecar;
+    private int dimension;
+    private int recordBytes;
+    private int recordsPerChunk;
+    private int recordCount;
+    private int[] recordSlot = new int[0]; // record -> slot, -1 once superseded
+    private int[] slotRecord = new int[0]; // slot -> latest record
+    private ThreadLocal<float[]> rowScratch;
+
+    EmbeddingSegmentStore(Path directory, String name) {
+        this.directory = directory;
+        this.name = name;
+        this.segmentPath = directory.resolve(name + ".seg");
+        this.sidecarPath = directory.resolve(name + ".ids");
+    }
+
+    /**
+     * Templates recovered from an existing segment, in slot order.
+     */
+    record Restored(int dimension, long[] templateIds, String[] usernames) {
+    }
+
+    /**
+     * Maps an existing segment and rebuilds the slot table from it.
+     *
+     * @return The restored templates, or null if there is no usable segment (the store is then left closed).
+     */
+    Restored open() throws IOException {
+        if (!Files.exists(segmentPath) || Files.size(segmentPath) < HEADER_BYTES || !Files.exists(sidecarPath)) {
+            return null;
+        }
+        channel = FileChannel.open(segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = map(0, HEADER_BYTES);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            log.warn("Ignoring embedding segment {} with unknown format.", segmentPath);
+            close();
+            return null;
+        }
+        setGeometry(header.getInt(8));
+        recordCount = (int) header.getLong(RECORD_COUNT_OFFSET);
+        while ((long) chunks.size() * recordsPerChunk < recordCount) {
+            mapNextChunk();
+        }
+
+        // Latest record per template id wins, unless a tombstone follows it; live records keep their physical order
+        Map<Long, Integer> latestRecord = new HashMap<>();
+        for (int record = 0; record < recordCount; record++) {
+            long templateId = templateIdAt(record);
+            if (templateId < 0) {
+                latestRecord.remove(~templateId);
+            } else {
+                latestRecord.put(templateId, record);
+            }
+        }
+        int[] live = latestRecord.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+        Map<Long, String> names = readSidecar();
+
+        recordSlot = new int[Math.max(recordCount, 1024)];
+        Arrays.fill(recordSlot, -1);
+        slotRecord = new int[Math.max(live.length, 1024)];
+        Arrays.fill(slotRecord, -1);
+        long[] templateIds = new long[live.length];
+        String[] usernames = new String[live.length];
+        for (int slot = 0; slot < live.length; slot++) {
+            recordSlot[live[slot]] = slot;
+            slotRecord[slot] = live[slot];
+            templateIds[slot] = templateIdAt(live[slot]);
+            usernames[slot] = names.get(templateIds[slot]);
+            if (usernames[slot] == null) {
+                log.warn("Embedding segment sidecar has no username for template {}; ignoring segment.", templateIds[slot]);
+                close();
+                return null;
+            }
+        }
+        sidecar = openSidecar();
+
+        if (recordCount - live.length > Math.max(MIN_DEAD_RECORDS_TO_COMPACT, live.length)) {
+            compact(templateIds, usernames);
+        }
+        return new Restored(dimension, templateIds, usernames);
+    }
+
+    /**
+     * Deletes the segment and its sidecar so the store can be rebuilt from the database.
+     */
+    void reset() throws IOException {
+        close();
+        Files.deleteIfExists(segmentPath);
+        Files.deleteIfExists(sidecarPath);
+        recordCount = 0;
+        recordSlot = new int[0];
+        slotRecord = new int[0];
+    }
+
+    @Override
+    public void initialize(int dimension) throws IOException {
+        Files.createDirectories(directory);
+        channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = map(0, HEADER_BYTES);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, dimension);
+        header.putLong(RECORD_COUNT_OFFSET, 0);
+        header.putLong(CHECKPOINT_OFFSET, 0);
+        setGeometry(dimension);
+        Files.deleteIfExists(sidecarPath);
+        sidecar = openSidecar();
+    }
+
+    /**
+     * @return The id of the last template change reflected in the segment, or 0 if none was recorded.
+     */
+    long checkpoint() {
+        return header.getLong(CHECKPOINT_OFFSET);
+    }
+
+    void checkpoint(long change) {
+        header.putLong(CHECKPOINT_OFFSET, change);
+    }
+
+    @Override
+    public void write(int slot, long templateId, String username, float[] vector) throws IOException {
+        // Sidecar first: a record is only counted once its username is durable
+        sidecar.writeLong(templateId);
+        sidecar.writeUTF(username);
+        sidecar.flush();
+
+        int record = append(templateId, vector);
+        if (slot >= slotRecord.length) {
+            slotRecord = grow(slotRecord, slot + 1);
+        }
+        if (slotRecord[slot] >= 0) {
+            recordSlot[slotRecord[slot]] = -1; // Superseded by this write
+        }
+        slotRecord[slot] = record;
+        recordSlot[record] = slot;
+    }
+
+    @Override
+    public void delete(int slot) throws IOException {
+        int live = slot < slotRecord.length ? slotRecord[slot] : -1;
+        if (live < 0) {
+            return;
+        }
+        append(~templateIdAt(live), new float[dimension]);
+        recordSlot[live] = -1;
+        slotRecord[slot] = -1;
+    }
+
+    /**
+     * Appends a record that no slot refers to yet and counts it in the header.
+     *
+     * @return The record number.
+     */
+    private int append(long templateId, float[] vector) throws IOException {
+        int record = recordCount;
+        if (record >= (long) chunks.size() * recordsPerChunk) {
+            mapNextChunk();
+        }
+        int within = record % recordsPerChunk;
+        chunks.get(record / recordsPerChunk).putLong(within * recordBytes, templateId);
+        chunkFloats.get(record / recordsPerChunk).put(floatIndex(within), vector, 0, dimension);
+
+        if (record >= recordSlot.length) {
+            recordSlot = grow(recordSlot, record + 1);
+        }
+        recordSlot[record] = -1;
+        recordCount++;
+        header.putLong(RECORD_COUNT_OFFSET, recordCount);
+        return record;
+    }
+
+    @Override
+    public void read(int slot, float[] destination, int offset) {
+        readRecord(slotRecord[slot], destination, offset);
+    }
+
+    @Override
+    public float dot(float[] query, int queryOffset, int slot) {
+        float[] row = rowScratch.get();
+        readRecord(slotRecord[slot], row, 0);
+        return scorer.dot(query, queryOffset, row, 0, dimension);
+    }
+
+    @Override
+    public int physicalRows() {
+        return recordCount;
+    }
+
+    @Override
+    public void scan(int from, int to, BlockVisitor visitor) {
+        // Copy live rows out of the mapping in small blocks so the SIMD kernels can work on float[]
+        float[] block = new float[SCAN_BLOCK_ROWS * dimension];
+        int[] slots = new int[SCAN_BLOCK_ROWS];
+        int count = 0;
+        for (int record = from; record < to; record++) {
+            int slot = recordSlot[record];
+            if (slot < 0) {
+                continue;
+            }
+            readRecord(record, block, count * dimension);
+            slots[count++] = slot;
+            if (count == SCAN_BLOCK_ROWS) {
+                visitor.visit(block, 0, count, slots, 0);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            visitor.visit(block, 0, count, slots, 0);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sidecar != null) {
+            sidecar.close();
+            sidecar = null;
+        }
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        if (header != null) {
+            header.force();
+            header = null;
+        }
+        chunks.clear();
+        chunkFloats.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Rewrites the segment with live records only, then swaps it in place of the current files.
+     */
+    private void compact(long[] templateIds, String[] usernames) {
+        long start = System.nanoTime();
+        int deadRecords = recordCount - templateIds.length;
+        EmbeddingSegmentStore compacted = new EmbeddingSegmentStore(directory, name + ".compact");
+        try {
+            compacted.initialize(dimension);
+            float[] row = new float[dimension];
+            for (int slot = 0; slot < templateIds.length; slot++) {
+                read(slot, row, 0);
+                compacted.write(slot, templateIds[slot], usernames[slot], row);
+            }
+            compacted.checkpoint(checkpoint());
+            compacted.close();
+            close();
+            Files.move(compacted.segmentPath, segmentPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(compacted.sidecarPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING);
+            if (open() == null) {
+                throw new IOException("Compacted segment could not be reopened.");
+            }
+            log.info("Compacted embedding segment: dropped {} superseded or deleted records in {} ms.",
+                    deadRecords, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            // e.g. on Windows a mapped file cannot be replaced until it is unmapped; keep using the current segment
+            log.warn("Embedding segment compaction skipped: {}", e.getMessage());
+        }
+    }
+
+    private void setGeometry(int dimension) {
+        this.dimension = dimension;
+        this.recordBytes = Long.BYTES + dimension * Float.BYTES;
+        this.recordsPerChunk = (int) Math.max(1, CHUNK_BYTES / recordBytes);
+        this.rowScratch = ThreadLocal.withInitial(() -> new float[dimension]);
+    }
+
+    private void mapNextChunk() throws IOException {
+        long chunkSize = (long) recordsPerChunk * recordBytes;
+        MappedByteBuffer chunk = map(HEADER_BYTES + chunks.size() * chunkSize, chunkSize); // Extends the file as needed
+        chunks.add(chunk);
+        chunkFloats.add(chunk.asFloatBuffer());
+    }
+
+    private MappedByteBuffer map(long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private long templateIdAt(int record) {
+        return chunks.get(record / recordsPerChunk).getLong((record % recordsPerChunk) * recordBytes);
+    }
+
+    private void readRecord(int record, float[] destination, int offset) {
+        chunkFloats.get(record / recordsPerChunk).get(floatIndex(record % recordsPerChunk), destination, offset, dimension);
+    }
+
+    private int floatIndex(int recordWithinChunk) {
+        return (recordWithinChunk * recordBytes + Long.BYTES) / Float.BYTES;
+    }
+
+    private Map<Long, String> readSidecar() throws IOException {
+        Map<Long, String> names = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecarPath)))) {
+            while (true) {
+                long templateId = in.readLong();
+                names.put(templateId, in.readUTF());
+            }
+        } catch (EOFException e) {
+            // End of the log (a torn final entry is ignored as well)
+        }
+        return names;
+    }
+
+    private DataOutputStream openSidecar() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecarPath,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private static int[] grow(int[] array, int required) {
+        int previous = array.length;
+        int[] grown = Arrays.copyOf(array, Math.max(required, Math.max(1024, previous * 2)));
+        Arrays.fill(grown, previous, grown.length, -1);
+        return grown;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Exact gallery search: a linear scan over every indexed embedding.
+ * This is the default engine and the recall baseline for approximate engines.
+ */
+@Component
+@ConditionalOnProperty(
+        name = "facial.recognition.search.engine",
+        havingValue = "exact",
+        matchIfMissing = true
+)
+public class ExactSearchEngine implements GallerySearchEngine {
+
+    private final EmbeddingIndex embeddingIndex;
+    private final Timer searchTimer;
+    private final Timer batchSearchTimer;
+
+    public ExactSearchEngine(EmbeddingIndex embeddingIndex, MeterRegistry registry) {
+        this.embeddingIndex = embeddingIndex;
+        this.searchTimer = GalleryMetrics.searchTimer(registry, "exact", "single");
+        this.batchSearchTimer = GalleryMetrics.searchTimer(registry, "exact", "batch");
+    }
+
+    @Override
+    public List<SearchHit> search(byte[] queryEmbedding, int k) {
+        return searchTimer.record(() -> doSearch(queryEmbedding, k));
+    }
+
+    private List<SearchHit> doSearch(byte[] queryEmbedding, int k) {
+        float[] query = EmbeddingCodec.decode(queryEmbedding);
+        if (!EmbeddingCodec.normalize(query)) {
+            return List.of();
+        }
+        return embeddingIndex.search(query, k);
+    }
+
+    /**
+     * Scores all queries in one blocked pass over the gallery.
+     */
+    @Override
+    public List<List<SearchHit>> searchBatch(List<byte[]> queryEmbeddings, int k) {
+        return batchSearchTimer.record(() -> doSearchBatch(queryEmbeddings, k));
+    }
+
+    private List<List<SearchHit>> doSearchBatch(List<byte[]> queryEmbeddings, int k) {
+        float[][] queries = new float[queryEmbeddings.size()][];
+        for (int q = 0; q < queries.length; q++) {
+            float[] query = EmbeddingCodec.decode(queryEmbeddings.get(q));
+            queries[q] = EmbeddingCodec.normalize(query) ? query : new float[0]; // Zero-norm queries match nothing
+        }
+        return embeddingIndex.searchBatch(queries, k);
+    }
+}
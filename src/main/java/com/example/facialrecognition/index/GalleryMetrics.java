@@ -0,0 +1,40 @@
+package com.example.facialrecognition.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gallery meters: the {@code facial.gallery.size} and {@code facial.gallery.users} gauges and the {@code facial.gallery.search} timers
+ * recorded by the search engines (tagged by engine and by single or batch mode).
+ */
+@Component
+@RequiredArgsConstructor
+public class GalleryMetrics implements MeterBinder {
+
+    static final String SEARCH = "facial.gallery.search";
+
+    private final EmbeddingIndex embeddingIndex;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("facial.gallery.size", embeddingIndex, EmbeddingIndex::size)
+                .description("Number of templates in the resident embedding index")
+                .register(registry);
+        Gauge.builder("facial.gallery.users", embeddingIndex, EmbeddingIndex::userCount)
+                .description("Number of users in the resident embedding index")
+                .register(registry);
+    }
+
+    static Timer searchTimer(MeterRegistry registry, String engine, String mode) {
+        return Timer.builder(SEARCH)
+                .description("Time to search the gallery, including decoding the query")
+                .tag("engine", engine)
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
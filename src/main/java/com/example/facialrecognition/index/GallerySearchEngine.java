@@ -0,0 +1,36 @@
+package com.example.facialrecognition.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches the enrolled gallery for the templates most similar to a query embedding.
+ * Implementations are selected with the {@code facial.recognition.search.engine} property.
+ */
+public interface GallerySearchEngine {
+
+    /**
+     * Finds the best matching templates for a query embedding.
+     *
+     * @param queryEmbedding The embedding to search for.
+     * @param k              The maximum number of candidates to return.
+     * @return Up to k candidates ordered by descending score; empty if the gallery is empty.
+     */
+    List<SearchHit> search(byte[] queryEmbedding, int k);
+
+    /**
+     * Finds the best matching templates for several query embeddings at once.
+     * The default runs one search per query; engines that can share a gallery pass across queries override it.
+     *
+     * @param queryEmbeddings The embeddings to search for.
+     * @param k               The maximum number of candidates to return per query.
+     * @return For each query, in order, up to k candidates ordered by descending score.
+     */
+    default List<List<SearchHit>> searchBatch(List<byte[]> queryEmbeddings, int k) {
+        List<List<SearchHit>> results = new ArrayList<>(queryEmbeddings.size());
+        for (byte[] queryEmbedding : queryEmbeddings) {
+            results.add(search(queryEmbedding, k));
+        }
+        return results;
+    }
+}
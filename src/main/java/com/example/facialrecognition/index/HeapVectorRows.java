@@ -0,0 +1,68 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.vector.VectorScorer;
+import com.example.facialrecognition.vector.VectorScorers;
+
+import java.util.Arrays;
+
+/**
+ * On-heap row storage: one contiguous row-major float array where physical row == slot.
+ */
+final class HeapVectorRows implements VectorRows {
+
+    private final VectorScorer scorer = VectorScorers.get();
+
+    private int dimension;
+    private float[] vectors = new float[0];
+    private int[] identity = new int[0]; // identity[i] == i, handed to visitors as the slot of row i
+    private int rows;
+
+    @Override
+    public void initialize(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public void write(int slot, long templateId, String username, float[] vector) {
+        if (slot >= identity.length) {
+            int capacity = Math.max(slot + 1, Math.max(1024, identity.length * 2));
+            vectors = Arrays.copyOf(vectors, capacity * dimension);
+            identity = new int[capacity];
+            Arrays.setAll(identity, i -> i);
+        }
+        System.arraycopy(vector, 0, vectors, slot * dimension, dimension);
+        rows = Math.max(rows, slot + 1);
+    }
+
+    @Override
+    public void delete(int slot) {
+        // Nothing to release: the index skips the row, which is not reused
+    }
+
+    @Override
+    public void read(int slot, float[] destination, int offset) {
+        System.arraycopy(vectors, slot * dimension, destination, offset, dimension);
+    }
+
+    @Override
+    public float dot(float[] query, int queryOffset, int slot) {
+        return scorer.dot(query, queryOffset, vectors, slot * dimension, dimension);
+    }
+
+    @Override
+    public int physicalRows() {
+        return rows;
+    }
+
+    @Override
+    public void scan(int from, int to, BlockVisitor visitor) {
+        if (from < to) {
+            visitor.visit(vectors, from * dimension, to - from, identity, from);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
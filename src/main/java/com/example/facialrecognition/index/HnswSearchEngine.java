@@ -0,0 +1,323 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Approximate gallery search using a Hierarchical Navigable Small World (HNSW) graph.
+ * <p>
+ * Graph nodes are {@link EmbeddingIndex} user slots (one vector per user: their template, or the centroid
+ * of their templates), so vectors are not duplicated (they may even live off-heap in the segment store);
+ * the graph is built incrementally as templates are indexed (including the initial load) and searched in
+ * roughly logarithmic time instead of scanning the whole gallery. The nearest users are then refined
+ * against their individual templates by the index.
+ * <p>
+ * The graph is guarded by the index lock: it is only mutated from {@link #onUpsert(int, boolean)}
+ * (index write lock held) and searched under the index read lock.
+ */
+@Component
+@ConditionalOnProperty(
+        name = "facial.recognition.search.engine",
+        havingValue = "hnsw"
+)
+@Slf4j
+public class HnswSearchEngine implements GallerySearchEngine, IndexListener {
+
+    private static final Comparator<Candidate> BEST_FIRST = Comparator.comparingDouble(Candidate::score).reversed();
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingDouble(Candidate::score);
+
+    private final EmbeddingIndex embeddingIndex;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final int refineFactor;
+    private final SplittableRandom random = new SplittableRandom(42); // Fixed seed keeps graph builds reproducible
+    private final Timer searchTimer;
+
+    private int[] levels = new int[0];
+    private int[][][] links = new int[0][][]; // links[node][level] = {count, neighbour slots...}
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswSearchEngine(EmbeddingIndex embeddingIndex, FacialRecognitionProperties properties, MeterRegistry registry) {
+        this.embeddingIndex = embeddingIndex;
+        this.searchTimer = GalleryMetrics.searchTimer(registry, "hnsw", "single");
+        FacialRecognitionProperties.Hnsw hnsw = properties.getSearch().getHnsw();
+        this.m = Math.max(2, hnsw.getM());
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, hnsw.getEfConstruction());
+        this.efSearch = Math.max(1, hnsw.getEfSearch());
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.refineFactor = properties.getTemplates().getRefineFactor();
+    }
+
+    @PostConstruct
+    void buildGraph() {
+        long start = System.nanoTime();
+        embeddingIndex.subscribe(this);
+        log.info("HNSW graph built over {} users in {} ms (M={}, efConstruction={}, efSearch={})",
+                embeddingIndex.userCount(), (System.nanoTime() - start) / 1_000_000, m, efConstruction, efSearch);
+    }
+
+    @Override
+    public List<SearchHit> search(byte[] queryEmbedding, int k) {
+        return searchTimer.record(() -> doSearch(queryEmbedding, k));
+    }
+
+    private List<SearchHit> doSearch(byte[] queryEmbedding, int k) {
+        float[] query = EmbeddingCodec.decode(queryEmbedding);
+        if (!EmbeddingCodec.normalize(query)) {
+            return List.of();
+        }
+        embeddingIndex.readLock().lock();
+        try {
+            if (entryPoint < 0 || query.length != embeddingIndex.dimension()) {
+                return List.of();
+            }
+            int current = greedyDescent(query, 0, entryPoint, maxLevel, 1, -1);
+            PriorityQueue<Candidate> nearest = searchLayer(query, 0, current, Math.max(efSearch, k), 0, -1);
+
+            TopKCollector shortlist = new TopKCollector(k * Math.max(1, refineFactor));
+            for (Candidate candidate : nearest) {
+                shortlist.offer(candidate.slot(), candidate.score());
+            }
+            return embeddingIndex.refine(query, 0, shortlist, k);
+        } finally {
+            embeddingIndex.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onUpsert(int slot, boolean inserted) {
+        ensureCapacity(slot + 1);
+        if (inserted) {
+            insert(slot);
+        } else {
+            relink(slot);
+        }
+    }
+
+    private void insert(int slot) {
+        int level = randomLevel();
+        levels[slot] = level;
+        links[slot] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[slot][l] = new int[maxLinks(l) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = slot;
+            maxLevel = level;
+            return;
+        }
+        connect(slot, entryPoint, maxLevel);
+        if (level > maxLevel) {
+            entryPoint = slot;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Re-wires a node whose vector was replaced: drops its old edges and links it again as if newly inserted.
+     */
+    private void relink(int slot) {
+        for (int l = 0; l <= levels[slot]; l++) {
+            int[] nodeLinks = links[slot][l];
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                removeLink(nodeLinks[i], slot, l);
+            }
+            nodeLinks[0] = 0;
+        }
+
+        int start = entryPoint;
+        if (start == slot) {
+            start = highestOtherNode(slot);
+            if (start < 0) {
+                return; // Only node in the graph, nothing to link to
+            }
+        }
+        connect(slot, start, levels[start]);
+    }
+
+    private void connect(int slot, int start, int startLevel) {
+        float[] query = new float[embeddingIndex.dimension()];
+        embeddingIndex.readVector(slot, query, 0);
+        int level = levels[slot];
+        int current = greedyDescent(query, 0, start, startLevel, level + 1, slot);
+
+        for (int l = Math.min(level, startLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> nearest = searchLayer(query, 0, current, efConstruction, l, slot);
+            List<Candidate> selected = bestOf(nearest, m);
+            int[] nodeLinks = links[slot][l];
+            for (Candidate neighbour : selected) {
+                nodeLinks[++nodeLinks[0]] = neighbour.slot();
+                addLink(neighbour.slot(), slot, l);
+            }
+            if (!selected.isEmpty()) {
+                current = selected.get(0).slot();
+            }
+        }
+    }
+
+    /**
+     * Greedily walks from the top level down to {@code stopLevel}, moving to the best neighbour on each layer.
+     */
+    private int greedyDescent(float[] query, int queryOffset, int start, int fromLevel, int stopLevel, int excluded) {
+        int current = start;
+        double currentScore = score(query, queryOffset, current);
+        for (int l = fromLevel; l >= stopLevel; l--) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                int[] nodeLinks = links[current][l];
+                for (int i = 1; i <= nodeLinks[0]; i++) {
+                    if (nodeLinks[i] == excluded) {
+                        continue;
+                    }
+                    double candidateScore = score(query, queryOffset, nodeLinks[i]);
+                    if (candidateScore > currentScore) {
+                        currentScore = candidateScore;
+                        current = nodeLinks[i];
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search on one layer, returning up to {@code ef} nearest nodes (as a worst-first heap).
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int queryOffset, int start, int ef, int level, int excluded) {
+        BitSet visited = new BitSet(embeddingIndex.slotCount());
+        if (excluded >= 0) {
+            visited.set(excluded);
+        }
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(WORST_FIRST);
+
+        if (start != excluded) {
+            Candidate first = new Candidate(start, score(query, queryOffset, start));
+            candidates.add(first);
+            results.add(first);
+        }
+        visited.set(start);
+
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (results.size() >= ef && closest.score() < results.peek().score()) {
+                break; // Every remaining candidate is worse than the current worst result
+            }
+            int[] nodeLinks = links[closest.slot()][level];
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                int neighbour = nodeLinks[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                double neighbourScore = score(query, queryOffset, neighbour);
+                if (results.size() < ef || neighbourScore > results.peek().score()) {
+                    Candidate candidate = new Candidate(neighbour, neighbourScore);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private void addLink(int node, int neighbour, int level) {
+        int[] nodeLinks = links[node][level];
+        if (nodeLinks[0] < nodeLinks.length - 1) {
+            nodeLinks[++nodeLinks[0]] = neighbour;
+            return;
+        }
+        // Full: keep the best maxLinks among the existing links plus the new one, scored from this node
+        float[] nodeVector = new float[embeddingIndex.dimension()];
+        embeddingIndex.readVector(node, nodeVector, 0);
+        PriorityQueue<Candidate> pool = new PriorityQueue<>(WORST_FIRST);
+        pool.add(new Candidate(neighbour, score(nodeVector, 0, neighbour)));
+        for (int i = 1; i <= nodeLinks[0]; i++) {
+            pool.add(new Candidate(nodeLinks[i], score(nodeVector, 0, nodeLinks[i])));
+        }
+        List<Candidate> kept = bestOf(pool, nodeLinks.length - 1);
+        nodeLinks[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            nodeLinks[i + 1] = kept.get(i).slot();
+        }
+    }
+
+    private void removeLink(int node, int neighbour, int level) {
+        if (levels[node] < level) {
+            return;
+        }
+        int[] nodeLinks = links[node][level];
+        for (int i = 1; i <= nodeLinks[0]; i++) {
+            if (nodeLinks[i] == neighbour) {
+                nodeLinks[i] = nodeLinks[nodeLinks[0]];
+                nodeLinks[0]--;
+                return;
+            }
+        }
+    }
+
+    private int highestOtherNode(int excluded) {
+        int best = -1;
+        for (int slot = 0; slot < embeddingIndex.slotCount(); slot++) {
+            if (slot != excluded && links[slot] != null && (best < 0 || levels[slot] > levels[best])) {
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    private static List<Candidate> bestOf(PriorityQueue<Candidate> pool, int limit) {
+        List<Candidate> sorted = new ArrayList<>(pool);
+        sorted.sort(BEST_FIRST);
+        return sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+    }
+
+    private double score(float[] query, int queryOffset, int slot) {
+        return embeddingIndex.dot(query, queryOffset, slot);
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= levels.length) {
+            return;
+        }
+        int capacity = Math.max(required, Math.max(1024, levels.length * 2));
+        levels = Arrays.copyOf(levels, capacity);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    private record Candidate(int slot, double score) {
+    }
+}
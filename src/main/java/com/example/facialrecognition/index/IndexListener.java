@@ -0,0 +1,17 @@
+package com.example.facialrecognition.index;
+
+/**
+ * Callback for components that derive structures from the {@link EmbeddingIndex} (e.g. ANN graphs).
+ * Invoked while the index write lock is held, so implementations may read the index freely
+ * but must not block on anything else.
+ */
+interface IndexListener {
+
+    /**
+     * Called after the vector stored in a slot was inserted or replaced.
+     *
+     * @param slot     The index slot that changed.
+     * @param inserted True if the slot is new, false if an existing template's embedding was replaced.
+     */
+    void onUpsert(int slot, boolean inserted);
+}
@@ -0,0 +1,11 @@
+package com.example.facialrecognition.index;
+
+/**
+ * A gallery search candidate.
+ *
+ * @param templateId The matched FacialTemplate id.
+ * @param username   The username owning the template.
+ * @param score      The cosine similarity between the query and the template (higher is better).
+ */
+public record SearchHit(long templateId, String username, double score) {
+}
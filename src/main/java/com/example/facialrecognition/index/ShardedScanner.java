@@ -0,0 +1,172 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Runs the exact gallery scan of the {@link EmbeddingIndex} across cores.
+ * <p>
+ * The gallery is cut into shards of about {@code shard-size} bytes, so the rows (or codes) a worker
+ * scores stay in its core's cache. Shards are scored in parallel on a dedicated fork-join pool of
+ * {@code parallelism} threads, each into its own top-k collectors, and the collectors are merged
+ * pairwise as the fork-join tree unwinds, so workers never contend. A gallery that fits in one
+ * shard, or a parallelism of 1, is scanned on the calling thread.
+ * <p>
+ * With {@code early-exit-score} set, shards that have not started yet are skipped once every query
+ * has a candidate scoring at least that much. The shortlist then holds a confident match rather than
+ * necessarily the best one, in exchange for not reading the rest of the gallery.
+ */
+final class ShardedScanner {
+
+    private static final int MIN_SHARD_UNITS = 64;
+
+    /**
+     * Scores one shard of the gallery.
+     */
+    interface Shard {
+        /**
+         * @param from First unit (row, centroid or code) of the shard.
+         * @param to   End of the shard, exclusive.
+         * @param topK One collector per query, owned by this shard.
+         */
+        void scan(int from, int to, TopKCollector[] topK);
+    }
+
+    private final ForkJoinPool pool; // Null when scanning on the calling thread only
+    private final long shardBytes;
+    private final Double earlyExitScore; // Null when disabled
+
+    ShardedScanner(FacialRecognitionProperties.Scan settings) {
+        int parallelism = settings.getParallelism() > 0 ? settings.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.shardBytes = Math.max(1, settings.getShardSize().toBytes());
+        this.earlyExitScore = settings.getEarlyExitScore();
+    }
+
+    void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Scores every unit of the gallery, shard by shard.
+     *
+     * @param units      Number of units to scan.
+     * @param unitBytes  Size of one unit, used to size the shards.
+     * @param queryCount Number of queries scored per unit.
+     * @param capacity   Number of candidates kept per query.
+     * @param shard      Scores one shard.
+     * @return One collector per query holding the best candidates over the scanned shards.
+     */
+    TopKCollector[] scan(int units, int unitBytes, int queryCount, int capacity, Shard shard) {
+        int shardUnits = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_SHARD_UNITS, shardBytes / Math.max(1, unitBytes)));
+        int shards = (int) (((long) units + shardUnits - 1) / shardUnits);
+        EarlyExit earlyExit = new EarlyExit(queryCount);
+        if (pool == null || shards <= 1) {
+            TopKCollector[] topK = collectors(queryCount, capacity);
+            for (int s = 0; s < shards && !earlyExit.reached(); s++) {
+                shard.scan(s * shardUnits, (int) Math.min(units, (long) (s + 1) * shardUnits), topK);
+                earlyExit.record(topK);
+            }
+            return topK;
+        }
+        TopKCollector[] topK = pool.invoke(new ShardTask(shard, earlyExit, 0, shards, shardUnits, units, queryCount, capacity));
+        return topK != null ? topK : collectors(queryCount, capacity);
+    }
+
+    private static TopKCollector[] collectors(int queryCount, int capacity) {
+        TopKCollector[] topK = new TopKCollector[queryCount];
+        for (int q = 0; q < queryCount; q++) {
+            topK[q] = new TopKCollector(capacity);
+        }
+        return topK;
+    }
+
+    /**
+     * Scans shards [from, to): splits the range in halves down to single shards, then merges the halves' collectors.
+     * Returns null when every shard of the range was skipped by the early exit.
+     */
+    private static final class ShardTask extends RecursiveTask<TopKCollector[]> {
+
+        private final Shard shard;
+        private final EarlyExit earlyExit;
+        private final int from;
+        private final int to;
+        private final int shardUnits;
+        private final int units;
+        private final int queryCount;
+        private final int capacity;
+
+        ShardTask(Shard shard, EarlyExit earlyExit, int from, int to, int shardUnits, int units, int queryCount, int capacity) {
+            this.shard = shard;
+            this.earlyExit = earlyExit;
+            this.from = from;
+            this.to = to;
+            this.shardUnits = shardUnits;
+            this.units = units;
+            this.queryCount = queryCount;
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected TopKCollector[] compute() {
+            if (earlyExit.reached()) {
+                return null;
+            }
+            if (to - from == 1) {
+                TopKCollector[] topK = collectors(queryCount, capacity);
+                shard.scan(from * shardUnits, (int) Math.min(units, (long) to * shardUnits), topK);
+                earlyExit.record(topK);
+                return topK;
+            }
+            int middle = (from + to) >>> 1;
+            ShardTask right = new ShardTask(shard, earlyExit, middle, to, shardUnits, units, queryCount, capacity);
+            right.fork();
+            TopKCollector[] merged = new ShardTask(shard, earlyExit, from, middle, shardUnits, units, queryCount, capacity).compute();
+            TopKCollector[] other = right.join();
+            if (merged == null) {
+                return other;
+            }
+            if (other != null) {
+                for (int q = 0; q < queryCount; q++) {
+                    merged[q].addAll(other[q]);
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Tracks which queries already have a candidate at or above the early-exit score.
+     */
+    private final class EarlyExit {
+
+        private final AtomicIntegerArray confident;
+        private final AtomicInteger remaining;
+
+        EarlyExit(int queryCount) {
+            this.confident = new AtomicIntegerArray(queryCount);
+            this.remaining = new AtomicInteger(queryCount);
+        }
+
+        boolean reached() {
+            return earlyExitScore != null && remaining.get() == 0;
+        }
+
+        void record(TopKCollector[] topK) {
+            if (earlyExitScore == null) {
+                return;
+            }
+            for (int q = 0; q < topK.length; q++) {
+                if (confident.get(q) == 0 && topK[q].best() >= earlyExitScore && confident.compareAndSet(q, 0, 1)) {
+                    remaining.decrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.facialrecognition.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bounded min-heap keeping the k best (slot, score) pairs seen during a scan.
+ * Primitive arrays only, so offering a candidate never allocates.
+ */
+final class TopKCollector {
+
+    private final int[] slots;
+    private final double[] scores;
+    private int size;
+
+    TopKCollector(int k) {
+        this.slots = new int[Math.max(1, k)];
+        this.scores = new double[Math.max(1, k)];
+    }
+
+    void offer(int slot, double score) {
+        if (size < slots.length) {
+            slots[size] = slot;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            slots[0] = slot;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The highest score collected so far.
+     */
+    double best() {
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            best = Math.max(best, scores[i]);
+        }
+        return best;
+    }
+
+    /**
+     * Offers every candidate of another collector, e.g. to merge the results of two shards.
+     */
+    void addAll(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.slots[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * @return The slot at heap position i (in no particular order).
+     */
+    int slotAt(int i) {
+        return slots[i];
+    }
+
+    /**
+     * Resolves collected template rows (see {@link EmbeddingIndex#refine}) into hits, best first.
+     * Caller must hold the index read lock.
+     */
+    List<SearchHit> toHits(EmbeddingIndex index) {
+        List<SearchHit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(new SearchHit(index.templateIdAt(slots[i]), index.usernameAt(slots[i]), scores[i]));
+        }
+        hits.sort(Collections.reverseOrder((a, b) -> Double.compare(a.score(), b.score())));
+        return hits;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[i] <= scores[smallest]) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int slot = slots[a];
+        slots[a] = slots[b];
+        slots[b] = slot;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
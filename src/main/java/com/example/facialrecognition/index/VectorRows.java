@@ -0,0 +1,72 @@
+package com.example.facialrecognition.index;
+
+import java.io.IOException;
+
+/**
+ * Storage for the full-precision template rows of the {@link EmbeddingIndex}. Here a slot is a template
+ * row number, not one of the index's user slots.
+ * <p>
+ * Rows may live on the heap ({@link HeapVectorRows}) or off-heap in a memory-mapped segment file
+ * ({@link EmbeddingSegmentStore}). Physical row order need not match slot order (the segment is
+ * append-only), so bulk scans walk physical rows and report the slot of each live row; scans may still
+ * report deleted slots, which the index skips.
+ * All access is guarded by the index lock.
+ */
+interface VectorRows {
+
+    /**
+     * Fixes the row dimension; called once, before the first write.
+     */
+    void initialize(int dimension) throws IOException;
+
+    /**
+     * Stores (or replaces) the row for a slot.
+     */
+    void write(int slot, long templateId, String username, float[] vector) throws IOException;
+
+    /**
+     * Drops the row for a slot; the slot is not read again.
+     */
+    void delete(int slot) throws IOException;
+
+    /**
+     * Copies the row for a slot into {@code destination} at {@code offset}.
+     */
+    void read(int slot, float[] destination, int offset);
+
+    /**
+     * Scores a query against the row for a slot.
+     *
+     * @return The dot product of the query slice and the row.
+     */
+    float dot(float[] query, int queryOffset, int slot);
+
+    /**
+     * @return The number of physical rows, including rows superseded by later writes.
+     */
+    int physicalRows();
+
+    /**
+     * Visits the live rows among physical rows [from, to) in contiguous blocks.
+     */
+    void scan(int from, int to, BlockVisitor visitor);
+
+    /**
+     * Flushes and releases any underlying resources.
+     */
+    void close() throws IOException;
+
+    /**
+     * Receives a block of rows during a scan.
+     */
+    interface BlockVisitor {
+        /**
+         * @param rows       Array holding the block; row i starts at {@code rowsOffset + i * dimension}.
+         * @param rowsOffset Start of the first row in {@code rows}.
+         * @param count      Number of rows in the block.
+         * @param slots      Index slot of each row; row i belongs to {@code slots[slotsOffset + i]}.
+         * @param slotsOffset Start of the first slot in {@code slots}.
+         */
+        void visit(float[] rows, int rowsOffset, int count, int[] slots, int slotsOffset);
+    }
+}
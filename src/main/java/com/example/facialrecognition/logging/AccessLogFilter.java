@@ -0,0 +1,174 @@
+package com.example.facialrecognition.logging;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes one structured access-log event per request: method, path, status, latency, request size and
+ * the recognition outcome(s) recorded while serving it. Request bodies are never captured.
+ * Asynchronous requests are logged when they complete, not when the request thread is released.
+ * <p>
+ * Events go to the {@code access} logger, which {@code logback-spring.xml} routes through an async
+ * appender, so request threads never wait on log I/O.
+ * <p>
+ * When {@code facial.recognition.logging.request-debug} is enabled, a request carrying the debug header
+ * (default {@code X-Debug-Trace: true}) is traced: its request headers and parts are logged, and
+ * {@link RequestDebugTurboFilter} enables debug/SQL logging for that request only.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private static final Logger ACCESS = LoggerFactory.getLogger("access");
+    private static final String OUTCOMES_ATTRIBUTE = AccessLogFilter.class.getName() + ".outcomes";
+
+    private final FacialRecognitionProperties.Logging settings;
+
+    public AccessLogFilter(FacialRecognitionProperties properties) {
+        this.settings = properties.getLogging();
+    }
+
+    /**
+     * Records a recognition outcome for the access-log line of the current request; a no-op outside a request.
+     *
+     * @param outcome The outcome, e.g. "match".
+     */
+    public static void recordOutcome(String outcome) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            recordOutcome(servletAttributes.getRequest(), outcome);
+        }
+    }
+
+    /**
+     * Records a recognition outcome for the access-log line of a request, e.g. from the thread completing an
+     * asynchronous request, where there is no current request.
+     *
+     * @param request The request being served.
+     * @param outcome The outcome, e.g. "match".
+     */
+    public static void recordOutcome(HttpServletRequest request, String outcome) {
+        @SuppressWarnings("unchecked")
+        Map<String, Integer> outcomes = (Map<String, Integer>) request.getAttribute(OUTCOMES_ATTRIBUTE);
+        if (outcomes == null) {
+            outcomes = Collections.synchronizedMap(new LinkedHashMap<>());
+            request.setAttribute(OUTCOMES_ATTRIBUTE, outcomes);
+        }
+        outcomes.merge(outcome, 1, Integer::sum);
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean traced = settings.isRequestDebug() && "true".equalsIgnoreCase(request.getHeader(settings.getDebugHeader()));
+        if (traced) {
+            RequestDebugTurboFilter.begin();
+        }
+        try {
+            if (traced) {
+                logRequestDetails(request);
+            }
+            filterChain.doFilter(request, response);
+        } finally {
+            if (traced) {
+                RequestDebugTurboFilter.end();
+            }
+            if (ACCESS.isInfoEnabled()) {
+                if (request.isAsyncStarted()) {
+                    request.getAsyncContext().addListener(new AsyncAccessLogger(request, response, start));
+                } else {
+                    logAccess(request, response, (System.nanoTime() - start) / 1_000_000.0);
+                }
+            }
+        }
+    }
+
+    private void logAccess(HttpServletRequest request, HttpServletResponse response, double latencyMs) {
+        Object outcomes = request.getAttribute(OUTCOMES_ATTRIBUTE);
+        String outcome = outcomes == null ? "-" : outcomes.toString();
+        ACCESS.atInfo()
+                .addKeyValue("method", request.getMethod())
+                .addKeyValue("path", request.getRequestURI())
+                .addKeyValue("status", response.getStatus())
+                .addKeyValue("latency_ms", latencyMs)
+                .addKeyValue("request_bytes", request.getContentLengthLong())
+                .addKeyValue("outcome", outcome)
+                .log("{} {} {} {}ms", request.getMethod(), request.getRequestURI(), response.getStatus(),
+                        String.format("%.1f", latencyMs));
+    }
+
+    /**
+     * Logs an asynchronous request once its response is complete (including after a timeout or an error).
+     */
+    private class AsyncAccessLogger implements AsyncListener {
+
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long start;
+
+        AsyncAccessLogger(HttpServletRequest request, HttpServletResponse response, long start) {
+            this.request = request;
+            this.response = response;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            logAccess(request, response, (System.nanoTime() - start) / 1_000_000.0);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    /**
+     * Logs headers and, for multipart form requests, the name, type and size of each part (never the content).
+     */
+    private void logRequestDetails(HttpServletRequest request) {
+        for (String header : Collections.list(request.getHeaderNames())) {
+            log.debug("Request header {}: {}", header, request.getHeader(header));
+        }
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)) { // Not camera streams: never consume a body
+            try {
+                request.getParts().forEach(part -> log.debug("Request part {} ({}, {} bytes, file name {})",
+                        part.getName(), part.getContentType(), part.getSize(), part.getSubmittedFileName()));
+            } catch (IOException | ServletException | IllegalStateException e) {
+                log.debug("Could not inspect multipart request: {}", e.getMessage());
+            }
+        }
+    }
+}
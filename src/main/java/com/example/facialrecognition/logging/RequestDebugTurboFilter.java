@@ -0,0 +1,69 @@
+package com.example.facialrecognition.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Logback turbo filter that turns on every level of selected loggers for a single request.
+ * <p>
+ * While {@link AccessLogFilter} serves a request that asked for tracing, it sets the {@value #MDC_KEY}
+ * MDC entry; events from the configured logger prefixes (e.g. {@code org.hibernate.SQL}) are then
+ * accepted regardless of their configured level, on that request's threads only. Other requests keep
+ * the normal levels. Configured in {@code logback-spring.xml}:
+ * <pre>{@code
+ * <turboFilter class="com.example.facialrecognition.logging.RequestDebugTurboFilter">
+ *     <logger>org.hibernate.SQL</logger>
+ * </turboFilter>
+ * }</pre>
+ */
+public class RequestDebugTurboFilter extends TurboFilter {
+
+    public static final String MDC_KEY = "requestDebug";
+
+    // Lets the filter skip the MDC lookup entirely (the common case) when no request is being traced
+    private static final AtomicInteger ACTIVE_REQUESTS = new AtomicInteger();
+
+    private final List<String> loggers = new ArrayList<>();
+
+    /**
+     * Adds a logger name prefix to trace; called by Joran for each {@code <logger>} element.
+     */
+    public void addLogger(String logger) {
+        loggers.add(logger.trim());
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (ACTIVE_REQUESTS.get() == 0 || MDC.get(MDC_KEY) == null) {
+            return FilterReply.NEUTRAL;
+        }
+        String name = logger.getName();
+        for (String prefix : loggers) {
+            if (name.startsWith(prefix)) {
+                return FilterReply.ACCEPT;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    /**
+     * Enables tracing for the current thread until {@link #end()}.
+     */
+    static void begin() {
+        MDC.put(MDC_KEY, "true");
+        ACTIVE_REQUESTS.incrementAndGet();
+    }
+
+    static void end() {
+        ACTIVE_REQUESTS.decrementAndGet();
+        MDC.remove(MDC_KEY);
+    }
+}
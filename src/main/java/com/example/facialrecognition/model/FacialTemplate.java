@@ -18,10 +18,11 @@ import java.time.LocalDateTime;
 @Table(name = "facial_templates")
 public class FacialTemplate {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "facial_templates_seq")
+    @SequenceGenerator(name = "facial_templates_seq", allocationSize = 50) // Sequence ids (unlike IDENTITY) allow JDBC insert batching
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY) // Reads go through projections; the User is rarely needed with the template
     @JoinColumn(name = "user_id", nullable = false) // Ensures a facial template is always linked to a user
     private User user;
 
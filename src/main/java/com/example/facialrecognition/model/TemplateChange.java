@@ -0,0 +1,52 @@
+package com.example.facialrecognition.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Represents an entry of the facial template change log (an outbox) in the database.
+ * Entries are written in the same transaction as the template change they describe, and every node
+ * replays them to keep its in-memory gallery in sync with the other nodes.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "template_changes",
+        indexes = @Index(name = "idx_template_changes_changed_at", columnList = "changed_at")) // Retention purges by date
+public class TemplateChange {
+
+    /**
+     * Kind of change: an UPSERT stands for any insert or update of the template.
+     */
+    public enum Type {
+        UPSERT,
+        DELETE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "template_changes_seq")
+    @SequenceGenerator(name = "template_changes_seq", allocationSize = 1) // One id at a time, so ids follow allocation order across nodes
+    private Long id;
+
+    @Column(name = "template_id", nullable = false)
+    private Long templateId; // The changed FacialTemplate (which may no longer exist)
+
+    @Column(nullable = false)
+    private String username; // Owner of the template, so nodes can drop it from their caches
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Type type;
+
+    @Column(nullable = false, length = 64)
+    private String origin; // Node that made the change; it applies the change itself and skips it when tailing
+
+    @Column(name = "changed_at", nullable = false)
+    @Builder.Default
+    private LocalDateTime changedAt = LocalDateTime.now();
+}
@@ -15,10 +15,12 @@ import java.io.Serializable;
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "users") // Renamed table to avoid conflict with SQL keywords
+@Table(name = "users", // Renamed table to avoid conflict with SQL keywords
+        indexes = @Index(name = "idx_users_username", columnList = "username", unique = true)) // Every lookup is by username
 public class User implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", allocationSize = 50) // Sequence ids (unlike IDENTITY) allow JDBC insert batching
     private Long id;
     private String username;
 
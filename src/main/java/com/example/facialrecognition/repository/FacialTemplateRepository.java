@@ -2,10 +2,18 @@ package com.example.facialrecognition.repository;
 
 import com.example.facialrecognition.model.FacialTemplate;
 import com.example.facialrecognition.model.User;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 /**
  * Repository interface for FacialTemplate entities.
@@ -14,9 +22,38 @@ import java.util.Optional;
 @Repository
 public interface FacialTemplateRepository extends JpaRepository<FacialTemplate, Long> {
     /**
-     * Finds a FacialTemplate associated with a specific User.
-     * @param user The User entity to find the facial template for.
-     * @return An Optional containing the FacialTemplate if found, or empty if not.
+     * Finds the FacialTemplates of a specific User, oldest first.
+     * @param user The User entity to find the facial templates for.
+     * @return The User's FacialTemplates, empty if the User has none.
+     */
+    List<FacialTemplate> findByUserOrderByEnrollmentDateAsc(User user);
+
+    /**
+     * Finds the FacialTemplates of several Users in a single query, oldest first.
+     * @param users The Users to find facial templates for.
+     * @return The FacialTemplates found.
+     */
+    List<FacialTemplate> findByUserInOrderByEnrollmentDateAsc(Collection<User> users);
+
+    /**
+     * Streams the id, username and embedding of every stored template without hydrating entities.
+     * Must be consumed inside a transaction and closed by the caller.
+     * @return A Stream of lightweight template projections.
+     */
+    @Query("select t.id as id, u.username as username, t.facialEmbedding as facialEmbedding " +
+            "from FacialTemplate t join t.user u")
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    Stream<TemplateEmbeddingView> streamAllEmbeddings();
+
+    /**
+     * Fetches the id, username and current embedding of some templates without hydrating entities.
+     * @param ids The FacialTemplate ids.
+     * @return The projections of the templates that still exist.
      */
-    Optional<FacialTemplate> findByUser(User user);
+    @Query("select t.id as id, u.username as username, t.facialEmbedding as facialEmbedding " +
+            "from FacialTemplate t join t.user u where t.id in :ids")
+    List<TemplateEmbeddingView> findEmbeddingsByIdIn(Collection<Long> ids);
 }
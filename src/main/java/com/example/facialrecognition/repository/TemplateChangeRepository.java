@@ -0,0 +1,49 @@
+package com.example.facialrecognition.repository;
+
+import com.example.facialrecognition.model.TemplateChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository interface for the facial template change log.
+ */
+@Repository
+public interface TemplateChangeRepository extends JpaRepository<TemplateChange, Long> {
+
+    /**
+     * Reads the change log forward from a position.
+     * @param id The last change already applied.
+     * @param limit The maximum number of changes to read.
+     * @return The following changes, in id order.
+     */
+    List<TemplateChange> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    /**
+     * @return The id of the most recent change, or null if the log is empty.
+     */
+    @Query("select max(c.id) from TemplateChange c")
+    Long findLatestId();
+
+    /**
+     * @return The id of the oldest retained change, or null if the log is empty.
+     */
+    @Query("select min(c.id) from TemplateChange c")
+    Long findOldestId();
+
+    /**
+     * Purges changes past their retention.
+     * @param cutoff Changes made before this date are deleted.
+     * @return The number of changes deleted.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from TemplateChange c where c.changedAt < :cutoff")
+    int deleteChangedBefore(LocalDateTime cutoff);
+}
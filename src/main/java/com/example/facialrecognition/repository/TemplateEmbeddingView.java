@@ -0,0 +1,14 @@
+package com.example.facialrecognition.repository;
+
+/**
+ * Projection over a FacialTemplate row carrying only what the in-memory index needs.
+ * Avoids hydrating the full entity graph (User, image URL, dates) when loading the gallery.
+ */
+public interface TemplateEmbeddingView {
+
+    Long getId();
+
+    String getUsername();
+
+    byte[] getFacialEmbedding();
+}
@@ -2,8 +2,11 @@ package com.example.facialrecognition.repository;
 
 import com.example.facialrecognition.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -18,4 +21,21 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return An Optional containing the User if found, or empty if not.
      */
     Optional<User> findByUsername(String username);
-}
\ No newline at end of file
+
+    /**
+     * Finds all Users whose username is in the given set, in a single query.
+     * @param usernames The usernames to search for.
+     * @return The Users found; usernames without a User are simply absent.
+     */
+    List<User> findByUsernameIn(Collection<String> usernames);
+
+    /**
+     * Fetches a User's id and facial embeddings in a single query, without hydrating entities.
+     * @param username The username to search for.
+     * @return One projection per facial template of the User (a single one with a null embedding when the
+     * User has no facial template), or empty if the User does not exist.
+     */
+    @Query("select u.id as userId, t.facialEmbedding as facialEmbedding " +
+            "from User u left join FacialTemplate t on t.user = u where u.username = :username")
+    List<UserTemplateView> findTemplatesByUsername(String username);
+}
@@ -0,0 +1,14 @@
+package com.example.facialrecognition.repository;
+
+/**
+ * Projection of a User joined with one of its FacialTemplates, carrying only what verification needs.
+ */
+public interface UserTemplateView {
+
+    Long getUserId();
+
+    /**
+     * @return The enrolled embedding, or null if the User has no facial template.
+     */
+    byte[] getFacialEmbedding();
+}
@@ -0,0 +1,407 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.dto.BatchEnrollmentResponse;
+import com.example.facialrecognition.dto.EnrollmentItemResult;
+import com.example.facialrecognition.dto.EnrollmentItemResult.Status;
+import com.example.facialrecognition.index.EmbeddingIndex;
+import com.example.facialrecognition.model.FacialTemplate;
+import com.example.facialrecognition.model.User;
+import com.example.facialrecognition.repository.FacialTemplateRepository;
+import com.example.facialrecognition.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Bulk enrollment pipeline.
+ * <p>
+ * Images flow through three bounded stages:
+ * <ol>
+ *     <li>read: the calling thread streams archive entries (or uploaded parts) one at a time into
+ *     pooled direct buffers ({@link ImageBufferPool});</li>
+ *     <li>extract: the {@link EmbeddingExtractor} pool decodes each image and extracts its embedding;</li>
+ *     <li>persist: a single writer groups results into transactions of {@code persist-batch-size}
+ *     templates, written with JDBC batching, then updates the embedding index.</li>
+ * </ol>
+ * A semaphore caps the number of images between stage 1 and the end of stage 3, so memory stays
+ * flat however large the archive is, and a slow stage back-pressures the reader.
+ * <p>
+ * The username of each image is its parent directory name if it has one ({@code alice/front.jpg}),
+ * otherwise its file name without extension ({@code alice.jpg}). Each image adds a template to its user,
+ * replacing the user's oldest one once they have {@code templates.max-per-user}.
+ */
+@Service
+@Slf4j
+public class BatchEnrollmentService {
+
+    private static final Extracted END_OF_BATCH = new Extracted(-1, null, null, null, null);
+    private static final long WRITER_CHECK_INTERVAL_MILLIS = 500;
+    private static final String WRITER_STOPPED = "Batch enrollment stopped before the image was saved.";
+
+    private final UserRepository userRepository;
+    private final FacialTemplateRepository facialTemplateRepository;
+    private final FacialTemplateStore facialTemplateStore;
+    private final EmbeddingExtractor embeddingExtractor;
+    private final ImageBufferPool imageBufferPool;
+    private final EmbeddingIndex embeddingIndex;
+    private final TemplateCache templateCache;
+    private final TransactionTemplate transactionTemplate;
+    private final RecognitionMetrics metrics;
+    private final FacialRecognitionProperties.Batch settings;
+    private final int maxTemplatesPerUser;
+    private final ExecutorService persistPool;
+
+    public BatchEnrollmentService(UserRepository userRepository,
+                                  FacialTemplateRepository facialTemplateRepository,
+                                  FacialTemplateStore facialTemplateStore,
+                                  EmbeddingExtractor embeddingExtractor,
+                                  ImageBufferPool imageBufferPool,
+                                  EmbeddingIndex embeddingIndex,
+                                  TemplateCache templateCache,
+                                  PlatformTransactionManager transactionManager,
+                                  RecognitionMetrics metrics,
+                                  FacialRecognitionProperties properties) {
+        this.userRepository = userRepository;
+        this.facialTemplateRepository = facialTemplateRepository;
+        this.facialTemplateStore = facialTemplateStore;
+        this.embeddingExtractor = embeddingExtractor;
+        this.imageBufferPool = imageBufferPool;
+        this.embeddingIndex = embeddingIndex;
+        this.templateCache = templateCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.metrics = metrics;
+        this.settings = properties.getBatch();
+        this.maxTemplatesPerUser = Math.max(1, properties.getTemplates().getMaxPerUser());
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("batch-persist-");
+        threadFactory.setDaemon(true);
+        this.persistPool = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        persistPool.shutdownNow();
+    }
+
+    /**
+     * Enrolls every image of a zip archive, reading it as a stream (the archive is never buffered whole).
+     *
+     * @param archive The zip archive content.
+     * @return Per-item results and totals.
+     * @throws IOException if the archive cannot be read.
+     */
+    public BatchEnrollmentResponse enrollArchive(InputStream archive) throws IOException {
+        Pipeline pipeline = new Pipeline();
+        try (ZipInputStream zip = new ZipInputStream(archive)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory() || isHidden(name)) {
+                    continue;
+                }
+                try {
+                    pipeline.submit(name, usernameFor(name),
+                            imageBufferPool.read(zip, entry.getSize(), settings.getMaxEntrySize().toBytes()));
+                } catch (IllegalArgumentException e) {
+                    pipeline.reject(name, usernameFor(name), e.getMessage());
+                }
+            }
+        } finally {
+            pipeline.finish();
+        }
+        return pipeline.response();
+    }
+
+    /**
+     * Enrolls a set of uploaded images.
+     *
+     * @param files The uploaded images; the username is derived from each original file name.
+     * @return Per-item results and totals.
+     */
+    public BatchEnrollmentResponse enrollFiles(List<MultipartFile> files) {
+        Pipeline pipeline = new Pipeline();
+        try {
+            for (MultipartFile file : files) {
+                String name = file.getOriginalFilename() != null ? file.getOriginalFilename() : file.getName();
+                try {
+                    pipeline.submit(name, usernameFor(name), imageBufferPool.read(file));
+                } catch (IOException | IllegalArgumentException e) {
+                    pipeline.reject(name, usernameFor(name), e.getMessage());
+                }
+            }
+        } finally {
+            pipeline.finish();
+        }
+        return pipeline.response();
+    }
+
+    /**
+     * One batch in flight: owns the back-pressure semaphore, the persist queue and the results.
+     */
+    private final class Pipeline {
+
+        private final Semaphore inFlight = new Semaphore(Math.max(1, settings.getMaxInFlight()));
+        private final BlockingQueue<Extracted> persistQueue = new LinkedBlockingQueue<>();
+        private final List<EnrollmentItemResult> results = Collections.synchronizedList(new ArrayList<>());
+        private final Map<Integer, EnrollmentItemResult> unfinished = new ConcurrentHashMap<>(); // Reported if the writer stops
+        private final Future<?> persister = persistPool.submit(this::persistLoop);
+        private int submitted;
+
+        /**
+         * Hands an image to the extraction pool; the pipeline owns the buffer from here on.
+         */
+        void submit(String item, String username, ImageBuffer image) {
+            if (username == null) {
+                image.close();
+                reject(item, null, "Cannot derive a username from the item name.");
+                return;
+            }
+            if (!acquire(1)) { // Back-pressure: wait until an earlier image has been persisted
+                image.close();
+                reject(item, username, WRITER_STOPPED);
+                return;
+            }
+            int id = submitted++;
+            unfinished.put(id, new EnrollmentItemResult(item, username, Status.FAILED, WRITER_STOPPED));
+            try {
+                embeddingExtractor.extractWhenAvailable(image).whenComplete((embedding, error) -> persistQueue.add(
+                        error == null
+                                ? new Extracted(id, item, username, embedding, null)
+                                : new Extracted(id, item, username, null, rootCause(error).getMessage())));
+            } catch (RuntimeException e) {
+                unfinished.remove(id);
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        void reject(String item, String username, String message) {
+            results.add(new EnrollmentItemResult(item, username, Status.FAILED, message));
+        }
+
+        /**
+         * Waits for every submitted image to be persisted, then stops the writer. If the writer has stopped
+         * early (interrupted on shutdown, or failed), the images it never saved are reported as failed.
+         */
+        void finish() {
+            if (acquire(Math.max(1, settings.getMaxInFlight()))) {
+                persistQueue.add(END_OF_BATCH);
+            }
+            try {
+                persister.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.error("Batch enrollment writer failed: {}", e.getCause().getMessage());
+            } catch (CancellationException e) {
+                log.error("Batch enrollment writer was cancelled.");
+            }
+            if (!unfinished.isEmpty()) {
+                log.warn("Batch enrollment stopped with {} images not saved.", unfinished.size());
+                results.addAll(unfinished.values());
+                unfinished.clear();
+            }
+        }
+
+        BatchEnrollmentResponse response() {
+            List<EnrollmentItemResult> items = List.copyOf(results);
+            items.forEach(item -> metrics.recordOutcome("enroll", item.status()));
+            return BatchEnrollmentResponse.of(items);
+        }
+
+        /**
+         * Takes permits, giving up once the writer has stopped since it would never release them.
+         */
+        private boolean acquire(int permits) {
+            try {
+                while (!inFlight.tryAcquire(permits, WRITER_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (persister.isDone()) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private void persistLoop() {
+            int batchSize = Math.max(1, settings.getPersistBatchSize());
+            List<Extracted> batch = new ArrayList<>(batchSize);
+            try {
+                while (true) {
+                    batch.add(persistQueue.take());
+                    persistQueue.drainTo(batch, batchSize - 1);
+                    boolean done = batch.remove(END_OF_BATCH);
+                    if (!batch.isEmpty()) {
+                        int items = batch.size();
+                        try {
+                            persist(batch);
+                        } finally {
+                            inFlight.release(items);
+                        }
+                    }
+                    batch.clear();
+                    if (done) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void record(Extracted extracted, Status status, String message) {
+            results.add(new EnrollmentItemResult(extracted.item(), extracted.username(), status, message));
+            unfinished.remove(extracted.id());
+        }
+
+        private void persist(List<Extracted> batch) {
+            List<Extracted> enrollable = new ArrayList<>(batch.size());
+            for (Extracted extracted : batch) {
+                if (extracted.error() != null) {
+                    record(extracted, Status.FAILED, extracted.error());
+                } else if (extracted.embedding() == null) {
+                    record(extracted, Status.NO_FACE, "No face detected or failed to extract embedding from the image.");
+                } else {
+                    enrollable.add(extracted);
+                }
+            }
+            if (enrollable.isEmpty()) {
+                return;
+            }
+
+            List<Saved> saved;
+            try {
+                saved = metrics.persistence(true)
+                        .record(() -> transactionTemplate.execute(status -> saveTemplates(enrollable)));
+            } catch (RuntimeException e) {
+                log.error("Error persisting batch of {} facial templates: {}", enrollable.size(), e.getMessage());
+                for (Extracted extracted : enrollable) {
+                    record(extracted, Status.FAILED, "An error occurred while saving the facial template.");
+                }
+                return;
+            }
+
+            // Publish to the resident index and the verification cache only once the transaction has committed.
+            // The templates are stored either way; one the index rejects is left to the next change log replay.
+            for (Saved entry : saved) {
+                Extracted extracted = entry.extracted();
+                boolean published = embeddingIndex.publish(entry.templateId(), extracted.username(), extracted.embedding());
+                templateCache.invalidate(extracted.username());
+                record(extracted, entry.status(), published ? null : "Saved, but not searchable until the next index replay.");
+            }
+        }
+
+        /**
+         * Saves one group of templates in a single transaction: one query for users, one for existing
+         * templates, then batched inserts/updates of the templates and their change-log entries.
+         */
+        private List<Saved> saveTemplates(List<Extracted> enrollable) {
+            // 1. Resolve users, creating the missing ones
+            LinkedHashSet<String> usernames = new LinkedHashSet<>();
+            enrollable.forEach(extracted -> usernames.add(extracted.username()));
+            Map<String, User> users = new HashMap<>();
+            userRepository.findByUsernameIn(usernames).forEach(user -> users.put(user.getUsername(), user));
+            List<User> newUsers = usernames.stream()
+                    .filter(username -> !users.containsKey(username))
+                    .map(username -> new User(null, username))
+                    .toList();
+            userRepository.saveAll(newUsers).forEach(user -> users.put(user.getUsername(), user));
+
+            // 2. Add a template per image, replacing each user's oldest one once they have max-per-user
+            Map<String, ArrayDeque<FacialTemplate>> templatesByUser = new HashMap<>();
+            facialTemplateRepository.findByUserInOrderByEnrollmentDateAsc(users.values())
+                    .forEach(template -> templatesByUser
+                            .computeIfAbsent(template.getUser().getUsername(), username -> new ArrayDeque<>())
+                            .addLast(template));
+            List<FacialTemplate> assigned = new ArrayList<>(enrollable.size());
+            List<Status> statuses = new ArrayList<>(enrollable.size());
+            for (Extracted extracted : enrollable) {
+                ArrayDeque<FacialTemplate> templates = templatesByUser
+                        .computeIfAbsent(extracted.username(), username -> new ArrayDeque<>());
+                FacialTemplate template;
+                if (templates.size() >= maxTemplatesPerUser) {
+                    template = templates.pollFirst();
+                    template.setFacialEmbedding(extracted.embedding());
+                    template.setImageUrl(extracted.item());
+                    template.setEnrollmentDate(LocalDateTime.now());
+                    statuses.add(template.getId() != null ? Status.UPDATED : Status.CREATED);
+                } else {
+                    template = new FacialTemplate(null, users.get(extracted.username()), extracted.embedding(),
+                            extracted.item(), LocalDateTime.now());
+                    statuses.add(Status.CREATED);
+                }
+                templates.addLast(template);
+                assigned.add(template);
+            }
+            facialTemplateStore.saveAll(new LinkedHashSet<>(assigned)); // Logs the changes in this transaction too
+            facialTemplateRepository.flush();
+
+            List<Saved> saved = new ArrayList<>(enrollable.size());
+            for (int i = 0; i < enrollable.size(); i++) {
+                saved.add(new Saved(enrollable.get(i), assigned.get(i).getId(), statuses.get(i)));
+            }
+            return saved;
+        }
+    }
+
+    private record Extracted(int id, String item, String username, byte[] embedding, String error) {
+    }
+
+    private record Saved(Extracted extracted, Long templateId, Status status) {
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static boolean isHidden(String name) {
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        return name.startsWith("__MACOSX/") || fileName.startsWith(".");
+    }
+
+    static String usernameFor(String name) {
+        String path = name.replace('\\', '/');
+        int lastSlash = path.lastIndexOf('/');
+        String username;
+        if (lastSlash > 0) {
+            String parent = path.substring(0, lastSlash);
+            username = parent.substring(parent.lastIndexOf('/') + 1);
+        } else {
+            String fileName = path.substring(lastSlash + 1);
+            int dot = fileName.lastIndexOf('.');
+            username = dot > 0 ? fileName.substring(0, dot) : fileName;
+        }
+        return username.isBlank() ? null : username.trim();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.dto.BatchRecognitionResponse;
+import com.example.facialrecognition.dto.RecognitionItemResult;
+import com.example.facialrecognition.dto.RecognitionItemResult.Status;
+import com.example.facialrecognition.index.GallerySearchEngine;
+import com.example.facialrecognition.index.SearchHit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Recognizes many probe images in one request.
+ * <p>
+ * Embeddings are extracted in parallel on the {@link EmbeddingExtractor} pool, then every probe is searched
+ * in a single {@link GallerySearchEngine#searchBatch} call, so an exact scan reads each gallery
+ * vector once for the whole batch instead of once per image.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BatchRecognitionService {
+
+    private final FacialRecognitionStrategy facialRecognitionStrategy;
+    private final GallerySearchEngine gallerySearchEngine;
+    private final EmbeddingExtractor embeddingExtractor;
+    private final ImageBufferPool imageBufferPool;
+    private final RecognitionMetrics metrics;
+
+    /**
+     * Recognizes a set of uploaded images.
+     *
+     * @param files The probe images.
+     * @param k     The number of candidates to return per image.
+     * @return Per-image top-k candidates and match decisions, in request order.
+     */
+    public BatchRecognitionResponse recognize(List<MultipartFile> files, int k) {
+        // 1. Extract all embeddings in parallel (waiting for room in the extraction pool rather than failing)
+        String[] names = new String[files.size()];
+        String[] errors = new String[files.size()];
+        List<CompletableFuture<byte[]>> extractions = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            names[i] = file.getOriginalFilename() != null ? file.getOriginalFilename() : file.getName();
+            try {
+                extractions.add(embeddingExtractor.extractWhenAvailable(imageBufferPool.read(file)));
+            } catch (IOException e) {
+                extractions.add(CompletableFuture.failedFuture(e));
+            } catch (IllegalArgumentException e) {
+                errors[i] = e.getMessage(); // Too large: the other images are still recognized
+                extractions.add(null);
+            }
+        }
+
+        byte[][] embeddings = new byte[files.size()][];
+        List<byte[]> queries = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            try {
+                embeddings[i] = extractions.get(i).join();
+                if (embeddings[i] != null) {
+                    queries.add(embeddings[i]);
+                }
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Error extracting embedding from {}: {}", names[i], cause.getMessage());
+                errors[i] = cause instanceof IOException ? "Failed to read image file." : "An error occurred during facial recognition.";
+            }
+        }
+
+        // 2. Search the gallery once for all extracted probes
+        List<List<SearchHit>> candidates = queries.isEmpty() ? List.of() : gallerySearchEngine.searchBatch(queries, k);
+
+        // 3. Apply the match threshold to each probe's best candidate
+        double threshold = facialRecognitionStrategy.getMatchThreshold();
+        List<RecognitionItemResult> items = new ArrayList<>(files.size());
+        for (int i = 0, q = 0; i < files.size(); i++) {
+            if (errors[i] != null) {
+                items.add(new RecognitionItemResult(names[i], Status.FAILED, null, List.of(), errors[i]));
+            } else if (embeddings[i] == null) {
+                items.add(new RecognitionItemResult(names[i], Status.NO_FACE, null, List.of(),
+                        "No face detected or failed to extract embedding from the image."));
+            } else {
+                List<SearchHit> hits = candidates.get(q++);
+                boolean matched = !hits.isEmpty() && hits.get(0).score() >= threshold;
+                items.add(new RecognitionItemResult(names[i], matched ? Status.MATCH : Status.NO_MATCH,
+                        matched ? hits.get(0).username() : null, hits, null));
+            }
+        }
+        items.forEach(item -> metrics.recordOutcome("recognize", item.status()));
+        return BatchRecognitionResponse.of(items);
+    }
+}
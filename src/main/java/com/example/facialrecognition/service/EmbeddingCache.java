@@ -0,0 +1,90 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Bounded cache of extraction results keyed by the SHA-256 of the uploaded bytes.
+ * <p>
+ * Kiosks and client retries resubmit the exact same photo; a hit skips decode and extraction entirely
+ * and never waits for an extraction thread (hashing does hold one of the pool's capacity permits). "No face" results are cached too, so
+ * a repeated unusable photo is also answered immediately; a failed extraction throws
+ * ({@link EmbeddingExtractionException}) and is never cached. Extraction is a pure function of the image
+ * bytes for a given strategy and configuration, so entries never need invalidating; they are evicted by
+ * {@code maximum-size} and {@code ttl}.
+ * <p>
+ * Meters: {@code cache.gets} (tagged {@code result=hit|miss}), {@code cache.evictions} and {@code cache.size},
+ * all tagged {@code cache=embeddings}.
+ */
+@Component
+public class EmbeddingCache {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Cache<String, Result> cache; // Null when caching is disabled
+
+    public EmbeddingCache(FacialRecognitionProperties properties, MeterRegistry registry) {
+        FacialRecognitionProperties.Cache settings = properties.getCache();
+        if (!settings.isEnabled()) {
+            this.cache = null;
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .expireAfterWrite(settings.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "embeddings");
+    }
+
+    /**
+     * Hashes an image's content.
+     *
+     * @param image The encoded image; not modified.
+     * @return The cache key of the image, or null when caching is disabled.
+     */
+    String key(ImageBuffer image) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(image.data());
+            return HEX.formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e); // Required of every JVM
+        }
+    }
+
+    /**
+     * @param key The image key, or null.
+     * @return The cached result, or null if the image has not been seen (or caching is disabled).
+     */
+    Result get(String key) {
+        return key == null ? null : cache.getIfPresent(key);
+    }
+
+    /**
+     * @param key       The image key, or null.
+     * @param embedding The extracted embedding, or null if no face was detected; never called for a failed extraction.
+     */
+    void put(String key, byte[] embedding) {
+        if (key != null) {
+            cache.put(key, new Result(embedding));
+        }
+    }
+
+    /**
+     * A cached extraction result; {@code embedding} is null when no face was detected.
+     */
+    record Result(byte[] embedding) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.facialrecognition.service;
+
+/**
+ * Thrown by a {@link FacialRecognitionStrategy} when extraction fails, as opposed to finding no face.
+ * The failure may not recur, so unlike a "no face" result it is never cached.
+ */
+public class EmbeddingExtractionException extends RuntimeException {
+
+    public EmbeddingExtractionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
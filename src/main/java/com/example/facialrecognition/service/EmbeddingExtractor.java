@@ -0,0 +1,237 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Runs embedding extraction (image decode and native OpenCV work) on a dedicated, bounded pool.
+ * <p>
+ * Requests are served on virtual threads, which are cheap to block but should not run long CPU-bound
+ * native calls. Extraction is therefore handed off to a fixed pool of platform threads sized to the
+ * cores, so it never competes with JDBC or multipart I/O for request threads.
+ * <p>
+ * The pool accepts at most {@code threads + queue-capacity} images at a time. Interactive endpoints
+ * fail fast with {@link ExtractionOverloadedException} (HTTP 429) beyond that; batch endpoints wait for
+ * room instead, since they already bound their own work in flight.
+ * <p>
+ * Images seen recently are answered from the {@link EmbeddingCache} without waiting for an extraction thread.
+ * Hashing an image for the cache holds a capacity permit all the same, so a saturated node rejects or queues
+ * uploads instead of hashing them on request threads without bound.
+ * <p>
+ * Meters: {@code facial.extraction} (time on a worker), {@code facial.extraction.queue} (time waiting for one),
+ * {@code facial.extraction.in_flight} and {@code facial.extraction.rejected}.
+ */
+@Service
+@Slf4j
+public class EmbeddingExtractor {
+
+    private final FacialRecognitionStrategy facialRecognitionStrategy;
+    private final EmbeddingCache cache;
+    private final ExecutorService pool;
+    private final Semaphore capacity;
+    private final Timer extractionTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejections;
+
+    public EmbeddingExtractor(FacialRecognitionStrategy facialRecognitionStrategy, EmbeddingCache cache,
+                              FacialRecognitionProperties properties, MeterRegistry registry) {
+        this.facialRecognitionStrategy = facialRecognitionStrategy;
+        this.cache = cache;
+        FacialRecognitionProperties.Extraction settings = properties.getExtraction();
+        int threads = settings.getThreads() > 0 ? settings.getThreads() : Runtime.getRuntime().availableProcessors();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("extraction-");
+        threadFactory.setDaemon(true);
+        this.pool = Executors.newFixedThreadPool(threads, threadFactory);
+        int maxInFlight = threads + Math.max(0, settings.getQueueCapacity());
+        this.capacity = new Semaphore(maxInFlight);
+
+        this.extractionTimer = Timer.builder("facial.extraction")
+                .description("Time to decode an image and extract its embedding, excluding queueing")
+                .tag("strategy", properties.getStrategy())
+                .publishPercentileHistogram()
+                .register(registry);
+        this.queueWaitTimer = Timer.builder("facial.extraction.queue")
+                .description("Time an image waited for a free extraction thread")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rejections = Counter.builder("facial.extraction.rejected")
+                .description("Interactive requests rejected with HTTP 429 because extraction was at capacity")
+                .register(registry);
+        Gauge.builder("facial.extraction.in_flight", capacity, c -> maxInFlight - c.availablePermits())
+                .description("Images queued or being extracted")
+                .register(registry);
+        log.info("Embedding extraction pool: {} threads, queue capacity {}", threads, settings.getQueueCapacity());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Extracts an embedding on the extraction pool and waits for it, failing fast when the pool is saturated.
+     *
+     * @param image The encoded image, read through {@link ImageBufferPool}; released once extracted or rejected.
+     * @return The encoded embedding, or null if no face is detected.
+     * @throws ExtractionOverloadedException if the pool has no room for another image.
+     * @throws EmbeddingExtractionException  if extraction fails.
+     */
+    public byte[] extract(ImageBuffer image) {
+        return join(extractAsync(image));
+    }
+
+    /**
+     * Extracts an embedding like {@link #extract}, but first runs a check on the encoded image in the same pool task
+     * and skips extraction if it fails, so a pre-check that decodes the image (e.g. frame hashing) counts against
+     * the pool's capacity rather than running on the request thread. The cache is consulted once the check passes.
+     *
+     * @param image  The encoded image, read through {@link ImageBufferPool}; released once processed or rejected.
+     * @param screen The check, run on an extraction thread; true to go on with extraction.
+     * @return Whether the check passed and, if it did, the encoded embedding (null if no face is detected).
+     * @throws ExtractionOverloadedException if the pool has no room for another image.
+     * @throws EmbeddingExtractionException  if extraction fails.
+     */
+    public Screened extractScreened(ImageBuffer image, Predicate<ByteBuffer> screen) {
+        acquireOrReject(image);
+        return join(schedule(image, data -> {
+            if (!screen.test(data)) {
+                return Screened.SKIPPED;
+            }
+            String key = cache.key(image);
+            EmbeddingCache.Result cached = cache.get(key);
+            return new Screened(true, cached != null ? cached.embedding() : extractAndCache(key, data));
+        }));
+    }
+
+    /**
+     * Schedules an extraction, failing fast when the pool is saturated.
+     *
+     * @param image The encoded image, read through {@link ImageBufferPool}; released once extracted or rejected.
+     * @return A future completed with the encoded embedding, or null if no face is detected; completed
+     * exceptionally if extraction fails.
+     * @throws ExtractionOverloadedException if the pool has no room for another image.
+     */
+    public CompletableFuture<byte[]> extractAsync(ImageBuffer image) {
+        acquireOrReject(image);
+        return cachedOrScheduled(image);
+    }
+
+    /**
+     * Schedules an extraction, waiting for room in the pool if it is saturated.
+     *
+     * @param image The encoded image, read through {@link ImageBufferPool}; released once extracted.
+     * @return A future completed with the encoded embedding, or null if no face is detected; completed
+     * exceptionally if extraction fails.
+     */
+    public CompletableFuture<byte[]> extractWhenAvailable(ImageBuffer image) {
+        capacity.acquireUninterruptibly();
+        return cachedOrScheduled(image);
+    }
+
+    /**
+     * Answers from the cache (releasing the image, which is no longer needed) or schedules the extraction.
+     * The caller holds a capacity permit, so hashing large uploads is bounded like extraction itself.
+     */
+    private CompletableFuture<byte[]> cachedOrScheduled(ImageBuffer image) {
+        String key;
+        EmbeddingCache.Result result;
+        try {
+            key = cache.key(image);
+            result = cache.get(key);
+        } catch (RuntimeException e) {
+            image.close();
+            capacity.release();
+            throw e;
+        }
+        if (result != null) {
+            image.close();
+            capacity.release();
+            return CompletableFuture.completedFuture(result.embedding());
+        }
+        return schedule(image, data -> extractAndCache(key, data));
+    }
+
+    private void acquireOrReject(ImageBuffer image) {
+        if (!capacity.tryAcquire()) {
+            image.close();
+            rejections.increment();
+            throw new ExtractionOverloadedException("Embedding extraction is at capacity.");
+        }
+    }
+
+    private byte[] extractAndCache(String key, ByteBuffer data) {
+        byte[] embedding = facialRecognitionStrategy.extractFacialEmbedding(data);
+        cache.put(key, embedding); // Not reached when extraction throws, so failures are retried
+        return embedding;
+    }
+
+    /**
+     * Runs work on an image on the pool, under a capacity permit the caller has acquired.
+     */
+    private <T> CompletableFuture<T> schedule(ImageBuffer image, Function<ByteBuffer, T> work) {
+        long submitted = System.nanoTime();
+        Map<String, String> context = MDC.getCopyOfContextMap(); // Carries per-request debug tracing onto the pool
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                queueWaitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                if (context != null) {
+                    MDC.setContextMap(context);
+                }
+                try {
+                    return work.apply(image.data());
+                } finally {
+                    image.close();
+                    MDC.clear();
+                    extractionTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    capacity.release();
+                }
+            }, pool);
+        } catch (RejectedExecutionException e) {
+            image.close();
+            capacity.release(); // Pool shut down
+            throw e;
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> task) {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Outcome of {@link #extractScreened}.
+     *
+     * @param passed    Whether the check passed, so extraction was attempted.
+     * @param embedding The encoded embedding, or null if the check failed or no face is detected.
+     */
+    public record Screened(boolean passed, byte[] embedding) {
+        static final Screened SKIPPED = new Screened(false, null);
+    }
+}
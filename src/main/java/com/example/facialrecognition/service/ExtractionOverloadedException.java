@@ -0,0 +1,12 @@
+package com.example.facialrecognition.service;
+
+/**
+ * Thrown when the extraction pool and its queue are full and an interactive request cannot be accepted.
+ * Controllers translate it to {@code 429 Too Many Requests}.
+ */
+public class ExtractionOverloadedException extends RuntimeException {
+
+    public ExtractionOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -1,8 +1,16 @@
 package com.example.facialrecognition.service;
 
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import com.example.facialrecognition.vector.VectorScorers;
+
+import java.nio.ByteBuffer;
+
 /**
  * Interface for different facial recognition implementations (strategies).
  * This defines the contract for any facial recognition service.
+ * <p>
+ * Embeddings are L2-normalized float vectors serialized with {@link EmbeddingCodec};
+ * the similarity between two embeddings is their cosine similarity.
  */
 public interface FacialRecognitionStrategy {
 
@@ -12,10 +20,45 @@ public interface FacialRecognitionStrategy {
      * using machine learning models.
      *
      * @param imageData The raw byte array of the image (e.g., JPEG, PNG).
-     * @return A byte array representing the facial embedding, or null if no face is detected or an error occurs.
+     * @return The L2-normalized embedding encoded with {@link EmbeddingCodec}, or null if the image holds no usable face.
+     * @throws EmbeddingExtractionException if extraction fails; null must mean the same bytes would never yield a face.
      */
     byte[] extractFacialEmbedding(byte[] imageData);
 
+    /**
+     * Extracts a facial embedding from an image held in a buffer, e.g. a pooled direct buffer the upload was
+     * streamed into. Implementations that can read native memory should override this to decode the buffer in
+     * place; the default copies the remaining bytes to the heap.
+     *
+     * @param imageData The encoded image, from its position to its limit; the position is not modified.
+     * @return The L2-normalized embedding encoded with {@link EmbeddingCodec}, or null if the image holds no usable face.
+     * @throws EmbeddingExtractionException if extraction fails; null must mean the same bytes would never yield a face.
+     */
+    default byte[] extractFacialEmbedding(ByteBuffer imageData) {
+        byte[] copy = new byte[imageData.remaining()];
+        imageData.duplicate().get(copy);
+        return extractFacialEmbedding(copy);
+    }
+
+    /**
+     * Scores how similar two facial embeddings are.
+     *
+     * @param embedding1 The first facial embedding.
+     * @param embedding2 The second facial embedding.
+     * @return The cosine similarity in [-1, 1] (higher means more similar), or 0 if the embeddings cannot be compared.
+     */
+    default double similarity(byte[] embedding1, byte[] embedding2) {
+        if (embedding1 == null || embedding2 == null || embedding1.length != embedding2.length || embedding1.length == 0) {
+            return 0.0; // Cannot compare
+        }
+        return VectorScorers.get().cosine(EmbeddingCodec.decode(embedding1), EmbeddingCodec.decode(embedding2));
+    }
+
+    /**
+     * @return The minimum similarity score for two embeddings to be considered the same person.
+     */
+    double getMatchThreshold();
+
     /**
      * Compares two facial embeddings to determine if they belong to the same person.
      *
@@ -0,0 +1,83 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.model.FacialTemplate;
+import com.example.facialrecognition.model.TemplateChange;
+import com.example.facialrecognition.model.User;
+import com.example.facialrecognition.repository.FacialTemplateRepository;
+import com.example.facialrecognition.repository.TemplateChangeRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes facial templates together with their change-log entries, in one transaction, so the change log
+ * holds exactly the committed template changes and every node can replay it into its gallery.
+ * <p>
+ * Callers still publish to this node's {@code EmbeddingIndex} once the transaction has committed; the entries
+ * carry this node's id, so its own {@link TemplateChangeTailer} skips them unless publishing failed.
+ */
+@Service
+public class FacialTemplateStore {
+
+    private final FacialTemplateRepository facialTemplateRepository;
+    private final TemplateChangeRepository templateChangeRepository;
+    private final String nodeId;
+
+    public FacialTemplateStore(FacialTemplateRepository facialTemplateRepository,
+                               TemplateChangeRepository templateChangeRepository,
+                               FacialRecognitionProperties properties) {
+        this.facialTemplateRepository = facialTemplateRepository;
+        this.templateChangeRepository = templateChangeRepository;
+        this.nodeId = properties.getChanges().getNodeId();
+    }
+
+    /**
+     * Inserts or updates a template and logs the change.
+     *
+     * @param template The template to save.
+     * @return The saved template, with its id.
+     */
+    @Transactional
+    public FacialTemplate save(FacialTemplate template) {
+        return saveAll(List.of(template)).get(0);
+    }
+
+    /**
+     * Inserts or updates templates and logs the changes; joins the caller's transaction if there is one.
+     *
+     * @param templates The templates to save.
+     * @return The saved templates, with their ids, in iteration order.
+     */
+    @Transactional
+    public List<FacialTemplate> saveAll(Collection<FacialTemplate> templates) {
+        List<FacialTemplate> saved = facialTemplateRepository.saveAll(templates);
+        templateChangeRepository.saveAll(saved.stream().map(template -> change(template, TemplateChange.Type.UPSERT)).toList());
+        return saved;
+    }
+
+    /**
+     * Deletes every template of a user and logs the deletions.
+     *
+     * @param user The user whose templates are deleted.
+     * @return The deleted templates; empty if the user had none.
+     */
+    @Transactional
+    public List<FacialTemplate> deleteAll(User user) {
+        List<FacialTemplate> templates = facialTemplateRepository.findByUserOrderByEnrollmentDateAsc(user);
+        facialTemplateRepository.deleteAll(templates);
+        templateChangeRepository.saveAll(templates.stream().map(template -> change(template, TemplateChange.Type.DELETE)).toList());
+        return templates;
+    }
+
+    private TemplateChange change(FacialTemplate template, TemplateChange.Type type) {
+        return TemplateChange.builder()
+                .templateId(template.getId())
+                .username(template.getUser().getUsername())
+                .type(type)
+                .origin(nodeId)
+                .build();
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.dto.FrameEvent;
+import com.example.facialrecognition.dto.FrameEvent.Type;
+import com.example.facialrecognition.index.GallerySearchEngine;
+import com.example.facialrecognition.index.SearchHit;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Recognizes continuous camera frames, doing full work only when the scene changes.
+ * <p>
+ * Each camera has a session holding the perceptual hash of its last processed frame and the face it is tracking:
+ * <ol>
+ *     <li>A frame whose {@link PerceptualHash} is within {@code max-hash-distance} bits of the last processed one
+ *     is skipped before any extraction. The hash is computed in the frame's extraction task, so its decode counts
+ *     against the extraction pool's capacity.</li>
+ *     <li>Otherwise its embedding is extracted; if it is at least {@code tracking-score} similar to the tracked face,
+ *     the identity is kept without a gallery search.</li>
+ *     <li>Only a new face is searched in the gallery.</li>
+ * </ol>
+ * A {@link FrameEvent} is returned only when the identity in view changes (a user or an unknown face appears,
+ * or the face leaves), so a person standing at the door produces one event rather than one per frame.
+ * <p>
+ * Frames of one camera are processed one at a time. When the extraction pool is saturated or extraction fails
+ * the frame is dropped rather than queued or retried, since a later frame supersedes it.
+ * <p>
+ * Meters: {@code facial.stream.frames} by {@code result} (duplicate, tracked, searched, no_face, dropped) and
+ * Caffeine cache meters tagged {@code cache=stream_sessions}.
+ */
+@Service
+public class FrameStreamService {
+
+    private final FacialRecognitionStrategy facialRecognitionStrategy;
+    private final EmbeddingExtractor embeddingExtractor;
+    private final GallerySearchEngine gallerySearchEngine;
+    private final FacialRecognitionProperties.Streams settings;
+    private final Cache<String, Session> sessions;
+    private final Counter duplicateFrames;
+    private final Counter trackedFrames;
+    private final Counter searchedFrames;
+    private final Counter noFaceFrames;
+    private final Counter droppedFrames;
+
+    public FrameStreamService(FacialRecognitionStrategy facialRecognitionStrategy, EmbeddingExtractor embeddingExtractor,
+                              GallerySearchEngine gallerySearchEngine, FacialRecognitionProperties properties,
+                              MeterRegistry registry) {
+        this.facialRecognitionStrategy = facialRecognitionStrategy;
+        this.embeddingExtractor = embeddingExtractor;
+        this.gallerySearchEngine = gallerySearchEngine;
+        this.settings = properties.getStreams();
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(settings.getMaxSessions())
+                .expireAfterAccess(settings.getSessionTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, sessions, "stream_sessions");
+        this.duplicateFrames = frameCounter(registry, "duplicate");
+        this.trackedFrames = frameCounter(registry, "tracked");
+        this.searchedFrames = frameCounter(registry, "searched");
+        this.noFaceFrames = frameCounter(registry, "no_face");
+        this.droppedFrames = frameCounter(registry, "dropped");
+    }
+
+    /**
+     * Processes the next frame of a camera, starting a session for it if needed.
+     *
+     * @param camera The camera id.
+     * @param frame  The encoded frame, read through {@link ImageBufferPool}; released once processed.
+     * @return The change in identity this frame shows, or null if nothing changed or the frame was skipped.
+     */
+    public FrameEvent process(String camera, ImageBuffer frame) {
+        Session session = sessions.get(camera, key -> new Session());
+        session.lock.lock();
+        try {
+            long sequence = ++session.frames;
+
+            // 1. Skip frames that look like the last processed one, else extract the face; both run on the
+            // extraction pool, and the frame is dropped if it is at capacity
+            FrameCheck check = new FrameCheck(session.lastHash);
+            EmbeddingExtractor.Screened screened;
+            try {
+                screened = embeddingExtractor.extractScreened(frame, check);
+            } catch (ExtractionOverloadedException | EmbeddingExtractionException e) {
+                droppedFrames.increment(); // A later frame supersedes it
+                return null;
+            }
+            if (!screened.passed()) {
+                duplicateFrames.increment();
+                return null;
+            }
+            session.lastHash = check.hash;
+            byte[] embedding = screened.embedding();
+            if (embedding == null) {
+                noFaceFrames.increment();
+                session.clearTrack(); // A face appearing next is searched again, not taken for the one that left
+                return session.emit(camera, sequence, Type.CLEARED, null, null);
+            }
+
+            // 2. Keep the tracked identity while the face stays similar to it
+            if (session.trackEmbedding != null
+                    && facialRecognitionStrategy.similarity(embedding, session.trackEmbedding) >= trackingScore()) {
+                trackedFrames.increment();
+                session.trackEmbedding = embedding; // Follow gradual changes in pose and lighting
+                return session.emit(camera, sequence, session.trackType, session.trackUsername, session.trackScore);
+            }
+
+            // 3. A new face: search the gallery and start tracking it
+            searchedFrames.increment();
+            List<SearchHit> candidates = gallerySearchEngine.search(embedding, 1);
+            SearchHit best = candidates.isEmpty() ? null : candidates.get(0);
+            boolean matched = best != null && best.score() >= facialRecognitionStrategy.getMatchThreshold();
+            session.trackEmbedding = embedding;
+            session.trackType = matched ? Type.MATCH : Type.UNKNOWN;
+            session.trackUsername = matched ? best.username() : null;
+            session.trackScore = best != null ? best.score() : null;
+            return session.emit(camera, sequence, session.trackType, session.trackUsername, session.trackScore);
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Records a frame of a camera that was dropped before processing, e.g. for being too large.
+     *
+     * @param camera The camera id.
+     */
+    public void drop(String camera) {
+        Session session = sessions.get(camera, key -> new Session());
+        session.lock.lock();
+        try {
+            session.frames++; // Keeps event frame numbers matching the camera's own count
+            droppedFrames.increment();
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a camera's session; its next frame starts a new one.
+     *
+     * @param camera The camera id.
+     * @return Whether the camera had a session.
+     */
+    public boolean close(String camera) {
+        return sessions.asMap().remove(camera) != null;
+    }
+
+    private double trackingScore() {
+        return settings.getTrackingScore() != null ? settings.getTrackingScore() : facialRecognitionStrategy.getMatchThreshold();
+    }
+
+    private static Counter frameCounter(MeterRegistry registry, String result) {
+        return Counter.builder("facial.stream.frames")
+                .description("Camera frames by how much work they needed")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Hashes a frame on the extraction pool and passes it unless it is a near-duplicate of the last processed one.
+     */
+    private final class FrameCheck implements Predicate<ByteBuffer> {
+        private final Long lastHash;
+        private Long hash; // Read by the caller once the extraction task has completed
+
+        FrameCheck(Long lastHash) {
+            this.lastHash = lastHash;
+        }
+
+        @Override
+        public boolean test(ByteBuffer frame) {
+            hash = PerceptualHash.of(frame);
+            return hash == null || lastHash == null || PerceptualHash.distance(hash, lastHash) > settings.getMaxHashDistance();
+        }
+    }
+
+    /**
+     * State of one camera; guarded by its lock since a camera may post frames on several connections.
+     */
+    private static final class Session {
+        private final ReentrantLock lock = new ReentrantLock(); // Not synchronized: it would pin the virtual thread
+        private long frames;
+        private Long lastHash;
+        private byte[] trackEmbedding;
+        private Type trackType;
+        private String trackUsername;
+        private Double trackScore;
+        private Type emittedType = Type.CLEARED;
+        private String emittedUsername;
+
+        void clearTrack() {
+            trackEmbedding = null;
+            trackType = null;
+            trackUsername = null;
+            trackScore = null;
+        }
+
+        /**
+         * @return An event if the identity differs from the last one emitted, otherwise null.
+         */
+        FrameEvent emit(String camera, long sequence, Type type, String username, Double score) {
+            if (type == emittedType && Objects.equals(username, emittedUsername)) {
+                return null;
+            }
+            emittedType = type;
+            emittedUsername = username;
+            return new FrameEvent(camera, sequence, type, username, score);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.facialrecognition.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An encoded image held in a direct buffer borrowed from an {@link ImageBufferPool}.
+ * Closing it returns the buffer to the pool; it must not be used afterwards.
+ */
+public final class ImageBuffer implements AutoCloseable {
+
+    private final ImageBufferPool pool;
+    private ByteBuffer buffer;
+
+    ImageBuffer(ImageBufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return A view of the image bytes, positioned at the first byte; independent of other views.
+     */
+    public ByteBuffer data() {
+        if (buffer == null) {
+            throw new IllegalStateException("Image buffer has been released.");
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * @return The size of the image in bytes.
+     */
+    public int size() {
+        return buffer == null ? 0 : buffer.limit();
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct buffers that uploaded images are streamed into before extraction.
+ * <p>
+ * Images are read straight from the multipart part (spooled to disk by the container) or the zip stream
+ * into off-heap memory, which OpenCV decodes in place: an upload is never materialized as a heap
+ * {@code byte[]}, let alone as the several copies {@code getBytes()} and the native copy used to make.
+ * <p>
+ * Buffers come in power-of-two size classes from 64KB up to {@code max-pooled-buffer-size}; each class
+ * keeps at most {@code pooled-buffers} idle buffers. Larger images get an exact-size buffer that is left
+ * to the garbage collector. The number of buffers in use is bounded by the callers ({@link EmbeddingExtractor}
+ * capacity, batch in-flight limits), not by the pool.
+ * <p>
+ * Meters: {@code facial.image_buffers.idle} (bytes held by idle buffers) and {@code facial.image_buffers.allocated}.
+ */
+@Component
+public class ImageBufferPool {
+
+    private static final int MIN_CLASS_SHIFT = 16; // 64KB
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int maxIdlePerClass;
+    private final int maxPooledSize;
+    private final Queue<ByteBuffer>[] idle;
+    private final AtomicInteger[] idleCounts;
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final Counter allocations;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ImageBufferPool(FacialRecognitionProperties properties, MeterRegistry registry) {
+        FacialRecognitionProperties.Extraction settings = properties.getExtraction();
+        this.maxIdlePerClass = Math.max(0, settings.getPooledBuffers());
+        long maxPooled = Math.min(settings.getMaxPooledBufferSize().toBytes(), 1L << 30);
+        this.maxPooledSize = Integer.highestOneBit((int) Math.max(maxPooled, 1L << MIN_CLASS_SHIFT));
+        int classes = Integer.numberOfTrailingZeros(maxPooledSize) - MIN_CLASS_SHIFT + 1;
+        this.idle = new Queue[classes];
+        this.idleCounts = new AtomicInteger[classes];
+        for (int i = 0; i < classes; i++) {
+            idle[i] = new ConcurrentLinkedQueue<>();
+            idleCounts[i] = new AtomicInteger();
+        }
+        this.allocations = Counter.builder("facial.image_buffers.allocated")
+                .description("Direct image buffers allocated because none of the right size was idle")
+                .register(registry);
+        Gauge.builder("facial.image_buffers.idle", idleBytes, AtomicLong::get)
+                .description("Bytes held by idle pooled image buffers")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Streams an uploaded file into a pooled buffer. The container enforces the upload size limit.
+     *
+     * @param file The uploaded image.
+     * @return The image; the caller owns it and must close it (or hand it to {@link EmbeddingExtractor}).
+     * @throws IOException if the upload cannot be read.
+     */
+    public ImageBuffer read(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return read(in, file.getSize(), MAX_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Streams an image into a pooled buffer, growing it as needed. The stream is not closed.
+     *
+     * @param in       The image content.
+     * @param sizeHint The expected size in bytes, or a negative value if unknown.
+     * @param maxSize  The largest image accepted, in bytes.
+     * @return The image; the caller owns it and must close it (or hand it to {@link EmbeddingExtractor}).
+     * @throws IOException              if the stream cannot be read.
+     * @throws IllegalArgumentException if the image is larger than {@code maxSize}.
+     */
+    public ImageBuffer read(InputStream in, long sizeHint, long maxSize) throws IOException {
+        int limit = (int) Math.min(maxSize, MAX_BUFFER_SIZE);
+        if (sizeHint > limit) {
+            throw tooLarge(limit);
+        }
+        ByteBuffer buffer = capped(acquire(sizeHint > 0 ? (int) sizeHint : 1), limit);
+        ReadableByteChannel channel = Channels.newChannel(in); // Not closed: that would close the caller's stream
+        try {
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    // Full: either the hint was exact (probe for the end) or the buffer must grow
+                    int next = in.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    if (buffer.limit() >= limit) {
+                        throw tooLarge(limit);
+                    }
+                    buffer = grow(buffer, limit);
+                    buffer.put((byte) next);
+                }
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            release(buffer);
+            throw e;
+        }
+        return new ImageBuffer(this, buffer.flip());
+    }
+
+    void release(ByteBuffer buffer) {
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass < 0 || buffer.capacity() != classSize(sizeClass)) {
+            return; // One-off buffer
+        }
+        if (idleCounts[sizeClass].incrementAndGet() > maxIdlePerClass) {
+            idleCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        idleBytes.addAndGet(buffer.capacity());
+        idle[sizeClass].offer(buffer.clear());
+    }
+
+    private ByteBuffer acquire(int capacity) {
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass < 0) {
+            allocations.increment();
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        ByteBuffer buffer = idle[sizeClass].poll();
+        if (buffer != null) {
+            idleCounts[sizeClass].decrementAndGet();
+            idleBytes.addAndGet(-buffer.capacity());
+            return buffer;
+        }
+        allocations.increment();
+        return ByteBuffer.allocateDirect(classSize(sizeClass));
+    }
+
+    private ByteBuffer grow(ByteBuffer buffer, int limit) {
+        ByteBuffer larger = capped(acquire((int) Math.min((long) buffer.capacity() * 2, limit)), limit);
+        larger.put(buffer.flip());
+        release(buffer);
+        return larger;
+    }
+
+    /**
+     * Stops reads at the size limit even when the size class is larger.
+     */
+    private static ByteBuffer capped(ByteBuffer buffer, int limit) {
+        return buffer.limit(Math.min(buffer.capacity(), limit));
+    }
+
+    /**
+     * @return The index of the smallest pooled size class holding {@code capacity} bytes, or -1 if it is too large to pool.
+     */
+    private int sizeClass(int capacity) {
+        if (capacity > maxPooledSize) {
+            return -1;
+        }
+        int shift = capacity <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return Math.max(0, shift - MIN_CLASS_SHIFT);
+    }
+
+    private static int classSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_CLASS_SHIFT);
+    }
+
+    private static IllegalArgumentException tooLarge(int limit) {
+        return new IllegalArgumentException("Image exceeds the maximum size of " + DataSize.ofBytes(limit) + ".");
+    }
+}
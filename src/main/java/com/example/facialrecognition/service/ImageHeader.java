@@ -0,0 +1,67 @@
+package com.example.facialrecognition.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads image dimensions from the encoded bytes without decoding any pixels.
+ * Supports JPEG (SOF segment) and PNG (IHDR chunk); other formats report unknown dimensions.
+ */
+final class ImageHeader {
+
+    private ImageHeader() {
+    }
+
+    /**
+     * @param data The encoded image.
+     * @return {width, height}, or null if the format is not recognized or the header is truncated.
+     */
+    static int[] dimensions(byte[] data) {
+        return dimensions(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @param data The encoded image, from its position to its limit; the position is not modified.
+     * @return {width, height}, or null if the format is not recognized or the header is truncated.
+     */
+    static int[] dimensions(ByteBuffer data) {
+        ByteBuffer image = data.slice(); // Absolute offsets below are relative to the image start
+        int length = image.limit();
+        if (length >= 24 && (image.get(0) & 0xFF) == 0x89 && image.get(1) == 'P' && image.get(2) == 'N' && image.get(3) == 'G') {
+            return new int[]{readInt(image, 16), readInt(image, 20)};
+        }
+        if (length >= 4 && (image.get(0) & 0xFF) == 0xFF && (image.get(1) & 0xFF) == 0xD8) {
+            return jpegDimensions(image, length);
+        }
+        return null;
+    }
+
+    private static int[] jpegDimensions(ByteBuffer data, int length) {
+        int offset = 2;
+        while (offset + 9 < length) {
+            if ((data.get(offset) & 0xFF) != 0xFF) {
+                return null; // Not at a marker: corrupt or unsupported stream
+            }
+            int marker = data.get(offset + 1) & 0xFF;
+            if (marker == 0xFF) {
+                offset++; // Fill byte
+                continue;
+            }
+            // SOF0-SOF15 carry the frame size; C4 (DHT), C8 (JPG) and CC (DAC) share the range but do not
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                int height = readShort(data, offset + 5);
+                int width = readShort(data, offset + 7);
+                return new int[]{width, height};
+            }
+            offset += 2 + readShort(data, offset + 2);
+        }
+        return null;
+    }
+
+    private static int readShort(ByteBuffer data, int offset) {
+        return ((data.get(offset) & 0xFF) << 8) | (data.get(offset + 1) & 0xFF);
+    }
+
+    private static int readInt(ByteBuffer data, int offset) {
+        return (readShort(data, offset) << 16) | readShort(data, offset + 2);
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.RectVector;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_objdetect.CascadeClassifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_COLOR;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_REDUCED_COLOR_2;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_REDUCED_COLOR_4;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_REDUCED_COLOR_8;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
+import static org.bytedeco.opencv.global.opencv_imgproc.COLOR_BGR2GRAY;
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.cvtColor;
+import static org.bytedeco.opencv.global.opencv_imgproc.equalizeHist;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * Preprocessing stage run before embedding extraction by {@link OpenCVFacialRecognitionService}.
+ * <ol>
+ *     <li>Downscale on decode: the image header is read first and the largest
+ *     {@code IMREAD_REDUCED_COLOR_2/4/8} factor that keeps {@code min-decode-side} pixels on the short
+ *     side is used, so libjpeg skips most of the work for camera-sized uploads.</li>
+ *     <li>Face detection: a bundled LBP cascade finds the largest face in the reduced image.</li>
+ *     <li>Normalization: the face (with a margin) is cropped and resized to a fixed square, so the
+ *     embedding cost no longer depends on the camera resolution.</li>
+ * </ol>
+ * When no face is found the whole frame is normalized instead, unless {@code require-face} is set.
+ * All native buffers are per thread and reused; extraction runs on the bounded {@link EmbeddingExtractor} pool.
+ */
+@Component
+@ConditionalOnProperty(
+        name = "facial.recognition.strategy",
+        havingValue = "opencv"
+)
+@Slf4j
+public class ImagePreprocessor {
+
+    private final FacialRecognitionProperties.Preprocessing settings;
+    private final ResourceLoader resourceLoader;
+    private final Timer decodeTimer;
+    private final Counter facesFound;
+    private final Counter facesMissing;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private Path cascadeFile; // Cascade copied out of the classpath (OpenCV loads it from a file); null when detection is off
+
+    public ImagePreprocessor(FacialRecognitionProperties properties, ResourceLoader resourceLoader, MeterRegistry registry) {
+        this.settings = properties.getPreprocessing();
+        this.resourceLoader = resourceLoader;
+        this.decodeTimer = Timer.builder("facial.decode")
+                .description("Time to decode an uploaded image")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.facesFound = faceDetectionCounter(registry, "face");
+        this.facesMissing = faceDetectionCounter(registry, "no_face");
+    }
+
+    @PostConstruct
+    void loadCascade() {
+        if (!settings.isEnabled() || !settings.isDetectFaces()) {
+            return;
+        }
+        Resource resource = resourceLoader.getResource(settings.getCascade());
+        try (InputStream in = resource.getInputStream()) {
+            cascadeFile = Files.createTempFile("face-cascade", ".xml");
+            cascadeFile.toFile().deleteOnExit();
+            Files.copy(in, cascadeFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load face cascade " + settings.getCascade(), e);
+        }
+        try (CascadeClassifier probe = new CascadeClassifier(cascadeFile.toString())) {
+            if (probe.empty()) {
+                throw new IllegalStateException("Face cascade " + settings.getCascade() + " is not a valid OpenCV cascade.");
+            }
+        } catch (UnsatisfiedLinkError e) {
+            // The objdetect natives link against GUI libraries (GTK) that headless hosts may lack
+            log.warn("Face detection unavailable, embedding whole frames instead: {}", e.getMessage());
+            cascadeFile = null;
+            return;
+        }
+        log.info("Face detection enabled with cascade {}", settings.getCascade());
+    }
+
+    /**
+     * Decodes, detects and normalizes an image.
+     *
+     * @param imageData The encoded image, used to read its dimensions from the header; not modified.
+     * @param encoded   The same bytes wrapped as a native Mat.
+     * @return A BGR image owned by the calling thread and valid until its next call, or null if the image
+     * could not be decoded or no face was found while {@code require-face} is set.
+     */
+    Mat prepare(ByteBuffer imageData, Mat encoded) {
+        Scratch buffers = scratch.get();
+        long start = System.nanoTime();
+        Mat decoded = imdecode(encoded, decodeFlags(imageData), buffers.decoded);
+        decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (decoded.empty()) {
+            log.debug("OpenCV: Failed to decode image data.");
+            return null;
+        }
+        if (!settings.isEnabled()) {
+            return decoded;
+        }
+
+        Rect face = null;
+        if (cascadeFile != null) {
+            face = largestFace(decoded, buffers);
+            (face != null ? facesFound : facesMissing).increment();
+        }
+        if (face == null && settings.isRequireFace()) {
+            log.debug("OpenCV: No face detected in image.");
+            return null;
+        }
+        int outputSize = settings.getOutputSize();
+        if (face == null) {
+            resize(decoded, buffers.normalized, new Size(outputSize, outputSize), 0, 0, INTER_AREA);
+        } else {
+            try (Mat region = new Mat(decoded, withMargin(face, decoded))) {
+                resize(region, buffers.normalized, new Size(outputSize, outputSize), 0, 0, INTER_AREA);
+            }
+        }
+        return buffers.normalized;
+    }
+
+    /**
+     * Picks the strongest downscale factor that keeps at least {@code min-decode-side} pixels on the short side.
+     */
+    private int decodeFlags(ByteBuffer imageData) {
+        int[] dimensions = settings.isEnabled() ? ImageHeader.dimensions(imageData) : null;
+        if (dimensions == null) {
+            return IMREAD_COLOR;
+        }
+        int shortSide = Math.min(dimensions[0], dimensions[1]);
+        int minSide = settings.getMinDecodeSide();
+        if (shortSide / 8 >= minSide) {
+            return IMREAD_REDUCED_COLOR_8;
+        }
+        if (shortSide / 4 >= minSide) {
+            return IMREAD_REDUCED_COLOR_4;
+        }
+        if (shortSide / 2 >= minSide) {
+            return IMREAD_REDUCED_COLOR_2;
+        }
+        return IMREAD_COLOR;
+    }
+
+    private Rect largestFace(Mat image, Scratch buffers) {
+        cvtColor(image, buffers.gray, COLOR_BGR2GRAY);
+        equalizeHist(buffers.gray, buffers.gray);
+        int minFace = settings.getMinFaceSize();
+        buffers.classifier(cascadeFile).detectMultiScale(buffers.gray, buffers.faces, 1.1, 3, 0,
+                new Size(minFace, minFace), new Size());
+        Rect best = null;
+        for (long i = 0; i < buffers.faces.size(); i++) {
+            Rect candidate = buffers.faces.get(i);
+            if (best == null || candidate.area() > best.area()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static Counter faceDetectionCounter(MeterRegistry registry, String result) {
+        return Counter.builder("facial.face_detection")
+                .description("Face detection results during preprocessing")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Rect withMargin(Rect face, Mat image) {
+        int margin = (int) Math.round(Math.max(face.width(), face.height()) * settings.getFaceMargin());
+        int x = Math.max(0, face.x() - margin);
+        int y = Math.max(0, face.y() - margin);
+        int right = Math.min(image.cols(), face.x() + face.width() + margin);
+        int bottom = Math.min(image.rows(), face.y() + face.height() + margin);
+        return new Rect(x, y, right - x, bottom - y);
+    }
+
+    /**
+     * Per-thread native buffers; OpenCV cascades are not safe for concurrent use, so each thread has its own.
+     */
+    private static final class Scratch {
+        private final Mat decoded = new Mat();
+        private final Mat gray = new Mat();
+        private final Mat normalized = new Mat();
+        private final RectVector faces = new RectVector();
+        private CascadeClassifier classifier;
+
+        CascadeClassifier classifier(Path cascadeFile) {
+            if (classifier == null) {
+                classifier = new CascadeClassifier(cascadeFile.toString());
+            }
+            return classifier;
+        }
+    }
+}
@@ -1,15 +1,17 @@
 package com.example.facialrecognition.service;
 
+import com.example.facialrecognition.vector.EmbeddingCodec;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
  * Mock Facial Recognition Service implementation.
- * This service simulates the process by generating random embeddings
- * and performing a simple "comparison" based on a similarity threshold.
+ * This service simulates the process by generating random unit vectors
+ * and comparing them by cosine similarity against a threshold.
  * It implements the FacialRecognitionStrategy interface.
  */
 @Service
@@ -22,42 +24,49 @@ import java.util.Random;
 public class MockFacialRecognitionService implements FacialRecognitionStrategy {
 
     private static final double SIMILARITY_THRESHOLD = 0.8; // Example threshold for matching
+    private static final int EMBEDDING_DIMENSION = 128;
 
     @Override
     public byte[] extractFacialEmbedding(byte[] imageData) {
         // --- MOCKED LOGIC START ---
         if (imageData == null || imageData.length == 0) {
-            log.info("Mock: No image data provided for embedding extraction. Returning null.");
+            log.debug("Mock: No image data provided for embedding extraction. Returning null.");
             return null; // Simulate no face detected due to invalid image
         }
-
-        // Simulate a fixed-size embedding (e.g., 128-dimensional vector)
-        byte[] embedding = new byte[128];
-        new Random().nextBytes(embedding); // Fill with random bytes
-        log.info("Mock: Extracted facial embedding (random).");
-        return embedding;
+        return randomEmbedding();
         // --- MOCKED LOGIC END ---
     }
 
     @Override
-    public boolean isMatch(byte[] embedding1, byte[] embedding2) {
-        // --- MOCKED LOGIC START ---
-        if (embedding1 == null || embedding2 == null || embedding1.length != embedding2.length) {
-            return false; // Cannot compare
+    public byte[] extractFacialEmbedding(ByteBuffer imageData) {
+        // The mock never reads the pixels, so there is nothing to copy out of the buffer
+        if (imageData == null || !imageData.hasRemaining()) {
+            log.debug("Mock: No image data provided for embedding extraction. Returning null.");
+            return null;
         }
+        return randomEmbedding();
+    }
 
-        // Simulate similarity:
-        // For demonstration purposes, we'll say they are "similar" if their first few bytes match.
-        // This is NOT how real facial recognition works.
-        int matchingBytes = 0;
-        for (int i = 0; i < Math.min(10, embedding1.length); i++) { // Check first 10 bytes
-            if (embedding1[i] == embedding2[i]) {
-                matchingBytes++;
-            }
+    private byte[] randomEmbedding() {
+        // Simulate a fixed-size embedding (e.g., 128-dimensional vector)
+        Random random = new Random();
+        float[] embedding = new float[EMBEDDING_DIMENSION];
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = (float) random.nextGaussian(); // Random direction on the unit sphere once normalized
         }
-        double simulatedSimilarity = (double) matchingBytes / 10.0;
-        log.info("Mock: Compared embeddings. Simulated similarity: {}", simulatedSimilarity);
-        return simulatedSimilarity >= SIMILARITY_THRESHOLD;
-        // --- MOCKED LOGIC END ---
+        EmbeddingCodec.normalize(embedding);
+        log.debug("Mock: Extracted facial embedding (random).");
+        return EmbeddingCodec.encode(embedding);
+    }
+
+    @Override
+    public double getMatchThreshold() {
+        return SIMILARITY_THRESHOLD;
+    }
+
+    @Override
+    public boolean isMatch(byte[] embedding1, byte[] embedding2) {
+        // No per-comparison logging: this is on the hot path; outcomes are counted by RecognitionMetrics
+        return similarity(embedding1, embedding2) >= SIMILARITY_THRESHOLD;
     }
 }
\ No newline at end of file
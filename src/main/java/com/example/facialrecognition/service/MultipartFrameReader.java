@@ -0,0 +1,158 @@
+package com.example.facialrecognition.service;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a {@code multipart/x-mixed-replace} stream (MJPEG, as pushed by IP cameras) into frames.
+ * <p>
+ * Every part must carry a {@code Content-Length} header, as camera streams do, so a frame is read with one
+ * bounded copy into a pooled buffer instead of scanning its bytes for the boundary.
+ * Not thread-safe; the underlying stream is not closed.
+ */
+public final class MultipartFrameReader {
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private final InputStream in;
+    private final String delimiter;
+    private boolean finished;
+
+    /**
+     * @param in       The stream content.
+     * @param boundary The {@code boundary} parameter of the stream's content type.
+     */
+    public MultipartFrameReader(InputStream in, String boundary) {
+        this.in = new BufferedInputStream(in);
+        this.delimiter = boundary.startsWith("--") ? boundary : "--" + boundary; // Some cameras include the dashes
+    }
+
+    /**
+     * Reads the next frame into a pooled buffer.
+     *
+     * @param pool    The pool the frame buffer is borrowed from.
+     * @param maxSize The largest frame accepted, in bytes.
+     * @return The frame, which the caller must close, or null once the stream has ended.
+     * @throws IOException              if the stream cannot be read, ends inside a frame or a part has no length.
+     * @throws IllegalArgumentException if a frame is larger than {@code maxSize}; the frame is skipped, so the stream
+     *                                  can still be read on.
+     */
+    public ImageBuffer next(ImageBufferPool pool, long maxSize) throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        // 1. Skip to the next delimiter (past the preamble or the line break ending the previous frame)
+        String line;
+        do {
+            line = readLine();
+            if (line == null || line.equals(delimiter + "--")) {
+                finished = true;
+                return null;
+            }
+        } while (!line.equals(delimiter));
+
+        // 2. Read the part headers
+        long length = -1;
+        while (!(line = requireLine()).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                try {
+                    length = Long.parseLong(line.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid frame Content-Length: " + line);
+                }
+            }
+        }
+        if (length < 0) {
+            throw new IOException("Frame part has no Content-Length header.");
+        }
+
+        // 3. Copy exactly the frame bytes, or skip an oversized frame so the next call reads the following one
+        if (length > maxSize) {
+            in.skipNBytes(length);
+            throw new IllegalArgumentException("Frame of " + length + " bytes exceeds the maximum size of " + maxSize + " bytes.");
+        }
+        ImageBuffer frame = pool.read(new PartInputStream(in, length), length, maxSize);
+        if (frame.size() < length) {
+            frame.close();
+            throw new EOFException("Stream ended inside a frame.");
+        }
+        return frame;
+    }
+
+    /**
+     * @return The next line without its line break or trailing whitespace, or null at the end of the stream.
+     */
+    private String readLine() throws IOException {
+        byte[] line = new byte[128];
+        int length = 0;
+        int next;
+        while ((next = in.read()) >= 0 && next != '\n') {
+            if (length == MAX_LINE_LENGTH) {
+                throw new IOException("Multipart line exceeds " + MAX_LINE_LENGTH + " bytes.");
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[length++] = (byte) next;
+        }
+        if (next < 0 && length == 0) {
+            return null;
+        }
+        return new String(line, 0, length, StandardCharsets.ISO_8859_1).stripTrailing();
+    }
+
+    private String requireLine() throws IOException {
+        String line = readLine();
+        if (line == null) {
+            throw new EOFException("Stream ended inside part headers.");
+        }
+        return line;
+    }
+
+    /**
+     * A window of the stream holding one frame; closing it leaves the stream open.
+     */
+    private static final class PartInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        PartInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int next = in.read();
+            if (next >= 0) {
+                remaining--;
+            }
+            return next;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.facialrecognition.service;
 
 
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.BytePointer;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
@@ -9,8 +12,7 @@ import org.springframework.stereotype.Service;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_COLOR;
-import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
 
 /**
  * OpenCV-based Facial Recognition Service implementation.
@@ -33,8 +35,11 @@ import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
  * 4. The `isMatch` method would then calculate cosine similarity or Euclidean distance
  * between two *real* embeddings and compare it to a refined threshold.
  * <p>
- * For this example, we'll generate a deterministic embedding based on image properties
- * so that uploading the same image consistently produces the same "embedding" for testing.
+ * For this example, we'll generate a deterministic embedding from a coarse intensity grid
+ * (mean intensity per cell, centered and L2-normalized) so that uploading the same image
+ * consistently produces the same "embedding" and cosine similarity behaves sensibly for testing.
+ * The grid is computed over the fixed-size face crop produced by {@link ImagePreprocessor}
+ * (steps a and b above), or over the whole frame when no face is detected.
  */
 @Service
 @ConditionalOnProperty( // This annotation makes the bean conditional
@@ -42,69 +47,184 @@ import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
         havingValue = "opencv"               // Value the property must have for this bean to be active
 )
 @Slf4j
+@RequiredArgsConstructor
 public class OpenCVFacialRecognitionService implements FacialRecognitionStrategy {
 
     private static final double SIMILARITY_THRESHOLD = 0.95; // Higher threshold for deterministic matching
+    private static final int GRID_ROWS = 8;
+    private static final int GRID_COLS = 16; // 8 x 16 cells = 128-dimensional embedding
+
+    /**
+     * Per-thread native buffers reused across extractions. Extraction runs on the fixed-size
+     * {@link EmbeddingExtractor} pool, so this is a bounded set of buffers rather than one per request.
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final ImagePreprocessor imagePreprocessor;
 
     @Override
     public byte[] extractFacialEmbedding(byte[] imageData) {
         if (imageData == null || imageData.length == 0) {
-            log.info("OpenCV: No image data provided for embedding extraction. Returning null.");
+            log.debug("OpenCV: No image data provided for embedding extraction. Returning null.");
             return null;
         }
 
-        Mat imageMat = null;
-        try {
-            // Convert byte array to OpenCV Mat
-            imageMat = imdecode(new Mat(imageData), IMREAD_COLOR);
+        Scratch scratch = SCRATCH.get();
+        try (Mat encoded = scratch.wrap(imageData)) {
+            return embed(ByteBuffer.wrap(imageData), encoded, scratch);
+        }
+    }
+
+    /**
+     * Decodes a direct buffer in place: the Mat points at the buffer's memory, so the image is never copied.
+     * Heap buffers fall back to the copying path.
+     */
+    @Override
+    public byte[] extractFacialEmbedding(ByteBuffer imageData) {
+        if (imageData == null || !imageData.hasRemaining()) {
+            log.debug("OpenCV: No image data provided for embedding extraction. Returning null.");
+            return null;
+        }
+        if (!imageData.isDirect()) {
+            return FacialRecognitionStrategy.super.extractFacialEmbedding(imageData);
+        }
 
-            if (imageMat.empty()) {
-                log.info("OpenCV: Failed to decode image data.");
+        ByteBuffer image = imageData.slice(); // Position 0, so the native address is the image start
+        try (BytePointer pointer = new BytePointer(image);
+             Mat encoded = new Mat(1, image.limit(), CV_8UC1, pointer)) {
+            return embed(image, encoded, SCRATCH.get());
+        }
+    }
+
+    private byte[] embed(ByteBuffer imageData, Mat encoded, Scratch scratch) {
+        try {
+            // Decode (reduced for large images), find the face and normalize it to a fixed size
+            Mat imageMat = imagePreprocessor.prepare(imageData, encoded);
+            if (imageMat == null) {
                 return null;
             }
 
             // --- SIMPLIFIED EMBEDDING GENERATION (NOT REAL ML) ---
             // In a real scenario, this is where you'd use pre-trained models
             // to detect faces and extract robust facial features.
-            // For demonstration, we'll create a "deterministic" embedding based on
-            // a simple hash of image properties, so the same image gives the same embedding.
-            long sumPixels = 0;
-            for (int i = 0; i < imageMat.rows(); i++) {
-                for (int j = 0; j < imageMat.cols(); j++) {
-                    // Sum of pixel values (simplified hash)
-                    sumPixels += imageMat.ptr(i, j).get(); // Gets byte value of pixel
-                }
-            }
+            // For demonstration, we'll create a "deterministic" embedding from the
+            // mean intensity of each cell of a coarse grid laid over the image.
+            float[] embedding = cellMeans(imageMat, scratch);
 
-            // Create a fixed-size embedding based on deterministic values
-            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2); // Two long values for embedding
-            buffer.putLong(sumPixels);
-            buffer.putLong(imageMat.total() * imageMat.channels()); // Example: total pixels * channels
-            byte[] embedding = buffer.array();
+            // Center the cell means so the embedding captures structure rather than overall brightness
+            float mean = 0f;
+            for (float cellMean : embedding) {
+                mean += cellMean / embedding.length;
+            }
+            for (int cell = 0; cell < embedding.length; cell++) {
+                embedding[cell] -= mean;
+            }
+            if (!EmbeddingCodec.normalize(embedding)) {
+                log.debug("OpenCV: Image has no intensity variation, treating as no face detected.");
+                return null;
+            }
             // --- END SIMPLIFIED EMBEDDING GENERATION ---
 
-            log.info("OpenCV: Extracted deterministic facial embedding.");
-            return embedding;
+            log.debug("OpenCV: Extracted deterministic facial embedding.");
+            return EmbeddingCodec.encode(embedding);
 
         } catch (Exception e) {
             log.error("OpenCV: Error during embedding extraction: {}", e.getMessage());
-            return null;
-        } finally {
-            if (imageMat != null) {
-                imageMat.release(); // Release native memory
+            throw new EmbeddingExtractionException("Failed to extract the facial embedding.", e);
+        }
+    }
+
+    /**
+     * Mean of the first channel over each cell of the grid.
+     * Pixels are copied out of native memory one row at a time (a single bulk copy per row) instead of
+     * one JNI call and pointer object per pixel.
+     */
+    private static float[] cellMeans(Mat image, Scratch scratch) {
+        int rows = image.rows();
+        int cols = image.cols();
+        int channels = image.channels();
+        int rowBytes = cols * channels;
+        long step = image.step1(); // Bytes per row, including any padding (8-bit image)
+        byte[] row = scratch.row(rowBytes);
+        int[] columnCells = scratch.columnCells(cols);
+        for (int j = 0; j < cols; j++) {
+            columnCells[j] = j * GRID_COLS / cols;
+        }
+
+        long[] cellSums = scratch.cellSums;
+        Arrays.fill(cellSums, 0L);
+        BytePointer data = image.data();
+        for (int i = 0; i < rows; i++) {
+            int cellRowBase = i * GRID_ROWS / rows * GRID_COLS;
+            data.position(i * step).get(row, 0, rowBytes);
+            for (int j = 0, offset = 0; j < cols; j++, offset += channels) {
+                cellSums[cellRowBase + columnCells[j]] += row[offset] & 0xFF; // Unsigned value of the pixel's first channel
+            }
+        }
+
+        // Every cell covers (rows in its grid row) x (columns in its grid column) pixels
+        long[] rowsPerCell = new long[GRID_ROWS];
+        long[] colsPerCell = new long[GRID_COLS];
+        for (int i = 0; i < rows; i++) {
+            rowsPerCell[i * GRID_ROWS / rows]++;
+        }
+        for (int j = 0; j < cols; j++) {
+            colsPerCell[columnCells[j]]++;
+        }
+        float[] means = new float[GRID_ROWS * GRID_COLS];
+        for (int r = 0; r < GRID_ROWS; r++) {
+            for (int c = 0; c < GRID_COLS; c++) {
+                long count = rowsPerCell[r] * colsPerCell[c];
+                means[r * GRID_COLS + c] = count == 0 ? 0f : (float) cellSums[r * GRID_COLS + c] / count;
             }
         }
+        return means;
     }
 
-    @Override
-    public boolean isMatch(byte[] embedding1, byte[] embedding2) {
-        if (embedding1 == null || embedding2 == null || embedding1.length != embedding2.length) {
-            return false; // Cannot compare
+    /**
+     * Reusable per-thread buffers: the native copy of heap-held images and Java-side row scratch.
+     */
+    private static final class Scratch {
+        private final long[] cellSums = new long[GRID_ROWS * GRID_COLS];
+        private BytePointer encoded = new BytePointer(64 * 1024);
+        private byte[] row = new byte[0];
+        private int[] columnCells = new int[0];
+
+        /**
+         * Copies the encoded image into the thread's native buffer (grown as needed) and wraps it without a further copy.
+         */
+        Mat wrap(byte[] imageData) {
+            if (encoded.capacity() < imageData.length) {
+                encoded.close();
+                encoded = new BytePointer(Math.max(imageData.length, encoded.capacity() * 2));
+            }
+            encoded.position(0).put(imageData, 0, imageData.length);
+            return new Mat(1, imageData.length, CV_8UC1, encoded);
         }
 
-        // For deterministic embeddings, a simple equality check is sufficient
-        boolean match = Arrays.equals(embedding1, embedding2);
-        log.info("OpenCV: Compared embeddings. Match: {}", match);
-        return match; // For deterministic embeddings, exact equality is the "match"
+        byte[] row(int length) {
+            if (row.length < length) {
+                row = new byte[length];
+            }
+            return row;
+        }
+
+        int[] columnCells(int length) {
+            if (columnCells.length < length) {
+                columnCells = new int[length];
+            }
+            return columnCells;
+        }
+    }
+
+    @Override
+    public double getMatchThreshold() {
+        return SIMILARITY_THRESHOLD;
+    }
+
+    @Override
+    public boolean isMatch(byte[] embedding1, byte[] embedding2) {
+        // No per-comparison logging: this is on the hot path; outcomes are counted by RecognitionMetrics
+        return similarity(embedding1, embedding2) >= SIMILARITY_THRESHOLD;
     }
 }
\ No newline at end of file
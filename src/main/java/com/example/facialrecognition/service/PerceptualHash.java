@@ -0,0 +1,94 @@
+package com.example.facialrecognition.service;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.nio.ByteBuffer;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_GRAYSCALE;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * 64-bit difference hash (dHash) of an encoded image, used to skip near-duplicate video frames.
+ * <p>
+ * The image is decoded in grayscale at the strongest reduction that keeps {@value #MIN_DECODE_SIDE} pixels on the
+ * short side (so libjpeg mostly skips the inverse DCT), shrunk to 9x8 and each bit records whether a pixel is
+ * brighter than its right neighbour. Frames of a static scene differ in a few bits; a person entering or moving
+ * changes many. This is far cheaper than embedding extraction and needs no face detection.
+ */
+final class PerceptualHash {
+
+    private static final int MIN_DECODE_SIDE = 64;
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * @param imageData The encoded image, from its position to its limit; the position is not modified.
+     * @return The hash, or null if the image cannot be decoded.
+     */
+    static Long of(ByteBuffer imageData) {
+        ByteBuffer image = imageData.slice(); // Position 0, so the native address is the image start
+        BytePointer pointer;
+        if (image.isDirect()) {
+            pointer = new BytePointer(image);
+        } else {
+            byte[] copy = new byte[image.remaining()];
+            image.get(copy);
+            pointer = new BytePointer(copy);
+        }
+        try (pointer;
+             Mat encoded = new Mat(1, imageData.remaining(), CV_8UC1, pointer);
+             Mat decoded = imdecode(encoded, decodeFlags(imageData));
+             Mat thumbnail = new Mat()) {
+            if (decoded.empty()) {
+                return null;
+            }
+            resize(decoded, thumbnail, new Size(WIDTH, HEIGHT), 0, 0, INTER_AREA);
+            byte[] pixels = new byte[WIDTH * HEIGHT];
+            thumbnail.data().get(pixels); // 9-byte rows are never padded
+            long hash = 0;
+            for (int row = 0; row < HEIGHT; row++) {
+                for (int col = 0; col < WIDTH - 1; col++) {
+                    int offset = row * WIDTH + col;
+                    hash = (hash << 1) | ((pixels[offset] & 0xFF) > (pixels[offset + 1] & 0xFF) ? 1 : 0);
+                }
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * @return The number of differing bits between two hashes, from 0 (identical) to 64.
+     */
+    static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    private static int decodeFlags(ByteBuffer imageData) {
+        int[] dimensions = ImageHeader.dimensions(imageData);
+        if (dimensions == null) {
+            return IMREAD_GRAYSCALE;
+        }
+        int shortSide = Math.min(dimensions[0], dimensions[1]);
+        if (shortSide / 8 >= MIN_DECODE_SIDE) {
+            return IMREAD_REDUCED_GRAYSCALE_8;
+        }
+        if (shortSide / 4 >= MIN_DECODE_SIDE) {
+            return IMREAD_REDUCED_GRAYSCALE_4;
+        }
+        if (shortSide / 2 >= MIN_DECODE_SIDE) {
+            return IMREAD_REDUCED_GRAYSCALE_2;
+        }
+        return IMREAD_GRAYSCALE;
+    }
+}
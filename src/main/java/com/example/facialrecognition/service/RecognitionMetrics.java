@@ -0,0 +1,87 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.logging.AccessLogFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Request-level meters shared by the endpoints and batch services, exposed through Actuator
+ * ({@code /actuator/prometheus}). They replace per-comparison log lines with aggregate counts.
+ * <ul>
+ *     <li>{@code facial.outcomes}: results per operation (enroll, recognize, verify) and outcome
+ *     (e.g. match, no_match, no_face, created, updated);</li>
+ *     <li>{@code facial.persistence}: time spent writing templates, per mode (single or batch).</li>
+ * </ul>
+ * Stage timers live next to the stage they measure: {@code facial.decode} in {@link ImagePreprocessor},
+ * {@code facial.extraction} in {@link EmbeddingExtractor} and {@code facial.gallery.search} in the search engines.
+ */
+@Component
+public class RecognitionMetrics {
+
+    public static final String OUTCOMES = "facial.outcomes";
+    public static final String PERSISTENCE = "facial.persistence";
+
+    private final MeterRegistry registry;
+    private final Timer singlePersistence;
+    private final Timer batchPersistence;
+
+    public RecognitionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.singlePersistence = persistenceTimer("single");
+        this.batchPersistence = persistenceTimer("batch");
+    }
+
+    /**
+     * Counts one result of an operation and attaches it to the current request's access-log line.
+     *
+     * @param operation The operation, e.g. "recognize".
+     * @param outcome   The outcome, e.g. "match"; enum names are lower-cased.
+     */
+    public void recordOutcome(String operation, Object outcome) {
+        String name = outcome.toString().toLowerCase(Locale.ROOT);
+        outcomeCounter(operation, name).increment();
+        AccessLogFilter.recordOutcome(name);
+    }
+
+    /**
+     * Counts one result of an operation completed off the request thread and attaches it to that request's
+     * access-log line.
+     *
+     * @param operation The operation, e.g. "recognize".
+     * @param outcome   The outcome, e.g. "match"; enum names are lower-cased.
+     * @param request   The asynchronous request the operation belongs to.
+     */
+    public void recordOutcome(String operation, Object outcome, HttpServletRequest request) {
+        String name = outcome.toString().toLowerCase(Locale.ROOT);
+        outcomeCounter(operation, name).increment();
+        AccessLogFilter.recordOutcome(request, name);
+    }
+
+    /**
+     * @return The timer for template writes of the enrollment endpoint (single) or batch enrollment (batch).
+     */
+    public Timer persistence(boolean batch) {
+        return batch ? batchPersistence : singlePersistence;
+    }
+
+    private Counter outcomeCounter(String operation, String outcome) {
+        return Counter.builder(OUTCOMES)
+                .description("Results of facial recognition operations")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry); // Returns the existing counter after the first call
+    }
+
+    private Timer persistenceTimer(String mode) {
+        return Timer.builder(PERSISTENCE)
+                .description("Time spent persisting facial templates")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Near-cache of enrolled embeddings (all templates of a user) by username for the verification endpoint.
+ * <p>
+ * Hot users are verified without a database round-trip; a miss costs one projection query
+ * ({@code UserRepository.findTemplatesByUsername}) and fills the cache. Enrollment on this node writes
+ * through, and {@code template-ttl} bounds how long a template changed by another node can be served.
+ * <p>
+ * Meters: {@code cache.gets}, {@code cache.evictions} and {@code cache.size}, tagged {@code cache=templates}.
+ */
+@Component
+public class TemplateCache {
+
+    private final Cache<String, List<byte[]>> cache;
+
+    public TemplateCache(FacialRecognitionProperties properties, MeterRegistry registry) {
+        FacialRecognitionProperties.Cache settings = properties.getCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(settings.getTemplateMaximumSize())
+                .expireAfterWrite(settings.getTemplateTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "templates");
+    }
+
+    /**
+     * @param username The username.
+     * @return The cached embeddings of the user's templates, or null if they are not cached.
+     */
+    public List<byte[]> get(String username) {
+        return cache.getIfPresent(username);
+    }
+
+    /**
+     * Caches (or replaces) the embeddings of a user, e.g. after enrollment.
+     *
+     * @param username   The username.
+     * @param embeddings The embeddings of all of the user's templates.
+     */
+    public void put(String username, List<byte[]> embeddings) {
+        cache.put(username, List.copyOf(embeddings));
+    }
+
+    /**
+     * Drops a user's cached embeddings; the next verification reloads them.
+     *
+     * @param username The username.
+     */
+    public void invalidate(String username) {
+        cache.invalidate(username);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.index.EmbeddingIndex;
+import com.example.facialrecognition.repository.TemplateChangeRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps this node's gallery in sync with template changes committed by other nodes.
+ * <p>
+ * Every {@code poll-interval}, the template change log is replayed past the index checkpoint
+ * ({@link EmbeddingIndex#replayChanges}), skipping this node's own changes (applied as they committed, or
+ * retried here if that failed), and the users whose templates changed are dropped from the verification
+ * {@link TemplateCache}.
+ * Changes older than {@code retention} are purged from the log once an hour.
+ */
+@Service
+@ConditionalOnProperty(
+        name = "facial.recognition.changes.enabled",
+        havingValue = "true",
+        matchIfMissing = true
+)
+@Slf4j
+public class TemplateChangeTailer {
+
+    private static final Duration PURGE_INTERVAL = Duration.ofHours(1);
+
+    private final EmbeddingIndex embeddingIndex;
+    private final TemplateCache templateCache;
+    private final TemplateChangeRepository templateChangeRepository;
+    private final FacialRecognitionProperties.Changes settings;
+    private final ScheduledExecutorService scheduler;
+    private LocalDateTime lastPurge = LocalDateTime.MIN;
+
+    public TemplateChangeTailer(EmbeddingIndex embeddingIndex,
+                                TemplateCache templateCache,
+                                TemplateChangeRepository templateChangeRepository,
+                                FacialRecognitionProperties properties) {
+        this.embeddingIndex = embeddingIndex;
+        this.templateCache = templateCache;
+        this.templateChangeRepository = templateChangeRepository;
+        this.settings = properties.getChanges();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("template-changes-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    @PostConstruct
+    void start() {
+        long interval = Math.max(1, settings.getPollInterval().toMillis());
+        scheduler.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Tailing the template change log every {} ms as node {} from change {}",
+                interval, settings.getNodeId(), embeddingIndex.checkpoint());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Applies the pending changes of other nodes, then purges expired changes if due.
+     */
+    void poll() {
+        try {
+            Set<String> changedUsers = embeddingIndex.replayChanges(settings.getNodeId());
+            changedUsers.forEach(templateCache::invalidate);
+            if (!changedUsers.isEmpty()) {
+                log.debug("Applied template changes of {} users from other nodes, up to change {}",
+                        changedUsers.size(), embeddingIndex.checkpoint());
+            }
+            purgeIfDue();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the next poll resumes from the checkpoint
+            log.warn("Failed to replay the template change log: {}", e.getMessage());
+        }
+    }
+
+    private void purgeIfDue() {
+        LocalDateTime now = LocalDateTime.now();
+        if (lastPurge.isAfter(now.minus(PURGE_INTERVAL))) {
+            return;
+        }
+        lastPurge = now;
+        int purged = templateChangeRepository.deleteChangedBefore(now.minus(settings.getRetention()));
+        if (purged > 0) {
+            log.info("Purged {} template changes older than {}", purged, settings.getRetention());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.facialrecognition.vector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts facial embeddings between their float vector form and the byte[] form persisted
+ * in {@code FacialTemplate.facialEmbedding} (little-endian IEEE-754 float32, one value per dimension).
+ */
+public final class EmbeddingCodec {
+
+    private EmbeddingCodec() {
+    }
+
+    /**
+     * @param vector The float vector to serialize.
+     * @return The little-endian float32 byte representation.
+     */
+    public static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    /**
+     * @param embedding The persisted embedding bytes.
+     * @return The embedding as a float vector.
+     * @throws IllegalArgumentException if the byte length is not a whole number of floats.
+     */
+    public static float[] decode(byte[] embedding) {
+        float[] vector = new float[dimension(embedding)];
+        decode(embedding, vector, 0);
+        return vector;
+    }
+
+    /**
+     * Decodes an embedding directly into a (row-major) destination array, avoiding an intermediate copy.
+     *
+     * @param embedding   The persisted embedding bytes.
+     * @param destination The array receiving the floats.
+     * @param offset      Where the vector starts in {@code destination}.
+     */
+    public static void decode(byte[] embedding, float[] destination, int offset) {
+        ByteBuffer.wrap(embedding).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+                .get(destination, offset, dimension(embedding));
+    }
+
+    /**
+     * @param embedding The persisted embedding bytes.
+     * @return The number of dimensions encoded.
+     * @throws IllegalArgumentException if the byte length is not a whole number of floats.
+     */
+    public static int dimension(byte[] embedding) {
+        if (embedding.length % Float.BYTES != 0) {
+            throw new IllegalArgumentException("Embedding length " + embedding.length + " is not a multiple of "
+                    + Float.BYTES + " bytes.");
+        }
+        return embedding.length / Float.BYTES;
+    }
+
+    /**
+     * Scales a vector in place to unit L2 norm, so cosine similarity reduces to a dot product.
+     *
+     * @param vector The vector to normalize.
+     * @return False if the vector has zero norm and was left untouched.
+     */
+    public static boolean normalize(float[] vector) {
+        double sumOfSquares = 0;
+        for (float value : vector) {
+            sumOfSquares += value * value;
+        }
+        if (sumOfSquares == 0) {
+            return false;
+        }
+        float scale = (float) (1.0 / Math.sqrt(sumOfSquares));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.facialrecognition.vector;
+
+/**
+ * Compresses float embeddings into compact byte codes that can be scored against a float query
+ * without decompressing them (asymmetric scoring). Codes are approximate, so callers re-rank the
+ * best candidates against the full-precision vectors.
+ */
+public interface EmbeddingQuantizer {
+
+    /**
+     * @return The number of bytes each encoded vector occupies.
+     */
+    int codeSize();
+
+    /**
+     * Encodes one vector.
+     *
+     * @param vectors    The array holding the vector.
+     * @param offset     Start of the vector within {@code vectors}.
+     * @param codes      The array receiving the code.
+     * @param codeOffset Where the code starts within {@code codes}.
+     */
+    void encode(float[] vectors, int offset, byte[] codes, int codeOffset);
+
+    /**
+     * Precomputes whatever per-query state the scoring needs (scaled query, lookup tables).
+     *
+     * @param query An L2-normalized query vector.
+     * @return A scorer approximating {@code dot(query, decode(code))} for any code.
+     */
+    CodeScorer prepare(float[] query);
+
+    /**
+     * Scores codes against one prepared query. Instances are not thread-safe.
+     */
+    interface CodeScorer {
+        float score(byte[] codes, int codeOffset);
+    }
+}
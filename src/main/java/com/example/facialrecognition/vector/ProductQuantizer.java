@@ -0,0 +1,151 @@
+package com.example.facialrecognition.vector;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Product quantization: the vector is split into {@code subspaces} equal slices and each slice is
+ * replaced by the index of its nearest of 256 k-means centroids, i.e. one byte per slice.
+ * A 512-d float32 embedding with 64 subspaces shrinks from 2048 to 64 bytes (32x).
+ * <p>
+ * Scoring uses asymmetric distance computation: per query, the dot product of each query slice with
+ * every centroid is tabulated once, after which scoring a code is {@code subspaces} table lookups.
+ */
+public final class ProductQuantizer implements EmbeddingQuantizer {
+
+    private static final int MAX_CENTROIDS = 256;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int subDimension;
+    private final int centroidCount;
+    private final float[][] codebooks; // codebooks[subspace] = centroidCount * subDimension floats
+    private final VectorScorer scorer = VectorScorers.get();
+
+    private ProductQuantizer(int dimension, int subspaces, int centroidCount, float[][] codebooks) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.subDimension = dimension / subspaces;
+        this.centroidCount = centroidCount;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Learns one k-means codebook per subspace.
+     *
+     * @param vectors    Row-major vectors.
+     * @param rows       The slots to train on (a sample of the gallery).
+     * @param dimension  The vector dimension; must be divisible by {@code subspaces}.
+     * @param subspaces  The number of slices (bytes per code).
+     * @param iterations The number of k-means (Lloyd) iterations.
+     * @return A trained quantizer.
+     * @throws IllegalArgumentException if the dimension is not divisible by the number of subspaces.
+     */
+    public static ProductQuantizer train(float[] vectors, int[] rows, int dimension, int subspaces, int iterations) {
+        if (subspaces <= 0 || dimension % subspaces != 0) {
+            throw new IllegalArgumentException("Dimension " + dimension + " is not divisible into " + subspaces + " subspaces.");
+        }
+        int subDimension = dimension / subspaces;
+        int centroidCount = Math.min(MAX_CENTROIDS, rows.length);
+        SplittableRandom random = new SplittableRandom(17);
+        VectorScorer scorer = VectorScorers.get();
+
+        float[][] codebooks = new float[subspaces][];
+        float[] slice = new float[rows.length * subDimension];
+        int[] assignment = new int[rows.length];
+        for (int s = 0; s < subspaces; s++) {
+            // Gather this subspace of every training row contiguously
+            for (int r = 0; r < rows.length; r++) {
+                System.arraycopy(vectors, rows[r] * dimension + s * subDimension, slice, r * subDimension, subDimension);
+            }
+            codebooks[s] = kMeans(slice, rows.length, subDimension, centroidCount, iterations, assignment, random, scorer);
+        }
+        return new ProductQuantizer(dimension, subspaces, centroidCount, codebooks);
+    }
+
+    @Override
+    public int codeSize() {
+        return subspaces;
+    }
+
+    @Override
+    public void encode(float[] vectors, int offset, byte[] codes, int codeOffset) {
+        for (int s = 0; s < subspaces; s++) {
+            codes[codeOffset + s] = (byte) nearestCentroid(codebooks[s], centroidCount, vectors,
+                    offset + s * subDimension, subDimension, scorer);
+        }
+    }
+
+    @Override
+    public CodeScorer prepare(float[] query) {
+        float[] table = new float[subspaces * MAX_CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            for (int c = 0; c < centroidCount; c++) {
+                table[s * MAX_CENTROIDS + c] = scorer.dot(query, s * subDimension, codebooks[s], c * subDimension, subDimension);
+            }
+        }
+        return (codes, codeOffset) -> {
+            float score = 0f;
+            for (int s = 0; s < subspaces; s++) {
+                score += table[s * MAX_CENTROIDS + (codes[codeOffset + s] & 0xFF)];
+            }
+            return score;
+        };
+    }
+
+    private static float[] kMeans(float[] points, int count, int dim, int k, int iterations, int[] assignment,
+                                  SplittableRandom random, VectorScorer scorer) {
+        float[] centroids = new float[k * dim];
+        // Initialise with k distinct training points (partial Fisher-Yates shuffle)
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int c = 0; c < k; c++) {
+            int pick = c + random.nextInt(count - c);
+            int swap = order[c];
+            order[c] = order[pick];
+            order[pick] = swap;
+            System.arraycopy(points, order[c] * dim, centroids, c * dim, dim);
+        }
+
+        float[] sums = new float[k * dim];
+        int[] sizes = new int[k];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int p = 0; p < count; p++) {
+                assignment[p] = nearestCentroid(centroids, k, points, p * dim, dim, scorer);
+            }
+            Arrays.fill(sums, 0f);
+            Arrays.fill(sizes, 0);
+            for (int p = 0; p < count; p++) {
+                int c = assignment[p];
+                sizes[c]++;
+                for (int d = 0; d < dim; d++) {
+                    sums[c * dim + d] += points[p * dim + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (sizes[c] == 0) {
+                    continue; // Empty cluster keeps its previous centroid
+                }
+                for (int d = 0; d < dim; d++) {
+                    centroids[c * dim + d] = sums[c * dim + d] / sizes[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int nearestCentroid(float[] centroids, int k, float[] vector, int offset, int dim, VectorScorer scorer) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float distance = scorer.squareDistance(vector, offset, centroids, c * dim, dim);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.facialrecognition.vector;
+
+/**
+ * Portable scalar kernels, used when the JDK Vector API is not available at runtime.
+ * Loops are unrolled with independent accumulators so the JIT can still pipeline them.
+ */
+final class ScalarVectorScorer implements VectorScorer {
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            float d0 = a[aOffset + i] - b[bOffset + i];
+            float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float dotInt8(float[] a, int aOffset, byte[] codes, int codesOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[aOffset + i] * codes[codesOffset + i];
+            s1 += a[aOffset + i + 1] * codes[codesOffset + i + 1];
+            s2 += a[aOffset + i + 2] * codes[codesOffset + i + 2];
+            s3 += a[aOffset + i + 3] * codes[codesOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * codes[codesOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.facialrecognition.vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels built on the incubating JDK Vector API ({@code jdk.incubator.vector}).
+ * Only loaded by {@link VectorScorers} when the module was added with {@code --add-modules jdk.incubator.vector}.
+ * Uses the widest species the CPU supports (e.g. 8 floats on AVX2, 16 on AVX-512) with two FMA accumulators.
+ */
+final class SimdVectorScorer implements VectorScorer {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // Same bit width as SPECIES, so one byte load widens into four float vectors
+    private static final VectorSpecies<Byte> BYTE_SPECIES = VectorSpecies.of(byte.class, SPECIES.vectorShape());
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int lanes = SPECIES.length();
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = length - 2 * lanes; i <= bound; i += 2 * lanes) {
+            acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc0);
+            acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i + lanes)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i + lanes), acc1);
+        }
+        for (int bound = SPECIES.loopBound(length); i < bound; i += lanes) {
+            acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc0);
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int lanes = SPECIES.length();
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += lanes) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dotInt8(float[] a, int aOffset, byte[] codes, int codesOffset, int length) {
+        int lanes = SPECIES.length();
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = BYTE_SPECIES.loopBound(length); i < bound; i += BYTE_SPECIES.length()) {
+            ByteVector packed = ByteVector.fromArray(BYTE_SPECIES, codes, codesOffset + i);
+            for (int part = 0; part < 4; part++) {
+                FloatVector widened = (FloatVector) packed.convertShape(VectorOperators.B2F, SPECIES, part);
+                acc = FloatVector.fromArray(SPECIES, a, aOffset + i + part * lanes).fma(widened, acc);
+            }
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * codes[codesOffset + i];
+        }
+        return sum;
+    }
+}
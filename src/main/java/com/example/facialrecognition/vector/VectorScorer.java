@@ -0,0 +1,55 @@
+package com.example.facialrecognition.vector;
+
+/**
+ * Similarity kernels over float vectors stored in (possibly shared, row-major) arrays.
+ * Obtain the fastest available implementation through {@link VectorScorers#get()}.
+ */
+public interface VectorScorer {
+
+    /**
+     * Computes the dot product of two vector slices.
+     *
+     * @param a       The array holding the first vector.
+     * @param aOffset Start of the first vector within {@code a}.
+     * @param b       The array holding the second vector.
+     * @param bOffset Start of the second vector within {@code b}.
+     * @param length  The vector dimension.
+     * @return The dot product; equal to the cosine similarity for L2-normalized vectors.
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * Computes the squared Euclidean (L2) distance of two vector slices.
+     *
+     * @param a       The array holding the first vector.
+     * @param aOffset Start of the first vector within {@code a}.
+     * @param b       The array holding the second vector.
+     * @param bOffset Start of the second vector within {@code b}.
+     * @param length  The vector dimension.
+     * @return The squared L2 distance.
+     */
+    float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * Computes the dot product of a float vector slice with a slice of signed int8 codes.
+     * Used for first-pass scoring against scalar-quantized embeddings.
+     *
+     * @param a           The array holding the float vector.
+     * @param aOffset     Start of the float vector within {@code a}.
+     * @param codes       The array holding the int8 codes.
+     * @param codesOffset Start of the codes within {@code codes}.
+     * @param length      The vector dimension.
+     * @return The dot product, treating each code as a signed integer.
+     */
+    float dotInt8(float[] a, int aOffset, byte[] codes, int codesOffset, int length);
+
+    /**
+     * Computes the cosine similarity of two whole vectors, normalizing on the fly.
+     *
+     * @return The cosine similarity in [-1, 1], or 0 if either vector has zero norm.
+     */
+    default float cosine(float[] a, float[] b) {
+        float normProduct = dot(a, 0, a, 0, a.length) * dot(b, 0, b, 0, b.length);
+        return normProduct == 0f ? 0f : dot(a, 0, b, 0, a.length) / (float) Math.sqrt(normProduct);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.facialrecognition.vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Selects the {@link VectorScorer} implementation once per JVM.
+ * <p>
+ * The SIMD scorer is used when the {@code jdk.incubator.vector} module is present in the boot layer
+ * (start the JVM with {@code --add-modules jdk.incubator.vector}); otherwise, or when the system property
+ * {@code facial.recognition.simd.disabled=true} is set, the scalar scorer is used.
+ */
+@Slf4j
+public final class VectorScorers {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final VectorScorer SCALAR = new ScalarVectorScorer();
+    private static final VectorScorer INSTANCE = create();
+
+    private VectorScorers() {
+    }
+
+    /**
+     * @return The fastest scorer available in this JVM.
+     */
+    public static VectorScorer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The portable scalar scorer, regardless of SIMD availability.
+     */
+    public static VectorScorer scalar() {
+        return SCALAR;
+    }
+
+    private static VectorScorer create() {
+        if (Boolean.getBoolean("facial.recognition.simd.disabled")) {
+            log.info("Vector scoring: SIMD disabled by system property, using scalar kernels.");
+            return SCALAR;
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            log.info("Vector scoring: module {} not enabled, using scalar kernels.", VECTOR_MODULE);
+            return SCALAR;
+        }
+        try {
+            // Loaded reflectively so this class never links against the incubator module when it is absent
+            VectorScorer simd = (VectorScorer) Class.forName(VectorScorers.class.getPackageName() + ".SimdVectorScorer")
+                    .getDeclaredConstructor()
+                    .newInstance();
+            log.info("Vector scoring: using SIMD kernels from {}.", VECTOR_MODULE);
+            return simd;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Vector scoring: failed to load SIMD kernels ({}), using scalar kernels.", e.toString());
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.facialrecognition.controller;
+
+import com.example.facialrecognition.index.SearchHit;
+import com.example.facialrecognition.repository.UserRepository;
+import com.example.facialrecognition.service.ExtractionFixture;
+import com.example.facialrecognition.service.RecognitionMetrics;
+import com.example.facialrecognition.service.TemplateCache;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class AsyncFacialRecognitionControllerTests {
+
+	private static final byte[] ALICE = EmbeddingCodec.encode(new float[]{1, 0, 0, 0});
+
+	@RegisterExtension
+	final ExtractionFixture fixture = new ExtractionFixture();
+
+	private final ExtractionFixture.FakeStrategy strategy = fixture.strategy();
+	private final UserRepository userRepository = mock(UserRepository.class);
+	private final TemplateCache templateCache = new TemplateCache(fixture.properties(), fixture.registry());
+	private volatile Thread scoringThread;
+	private AsyncFacialRecognitionController controller;
+
+	@AfterEach
+	void shutdown() {
+		if (controller != null) {
+			controller.shutdown();
+		}
+	}
+
+	@Test
+	void recognizesARawImageBody() throws Exception {
+		strategy.face("face", ALICE);
+
+		dispatch(post("/api/v2/facial/recognize").contentType(MediaType.IMAGE_JPEG).content("face".getBytes()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.status").value("MATCH"))
+				.andExpect(jsonPath("$.username").value("alice"))
+				.andExpect(jsonPath("$.candidates[0].score").value(1.0));
+
+		assertThat(scoringThread.isVirtual()).as("scored on a virtual thread").isTrue();
+		assertThat(scoringThread.getName()).doesNotStartWith("extraction-");
+	}
+
+	@Test
+	void recognizesAMultipartImage() throws Exception {
+		strategy.face("face", ALICE);
+
+		dispatch(multipart("/api/v2/facial/recognize").file(new MockMultipartFile("file", "alice.jpg", "image/jpeg", "face".getBytes())))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.item").value("alice.jpg"))
+				.andExpect(jsonPath("$.status").value("MATCH"))
+				.andExpect(jsonPath("$.username").value("alice"));
+	}
+
+	@Test
+	void reportsAnImageWithoutAFaceAsABadRequest() throws Exception {
+		dispatch(post("/api/v2/facial/recognize").contentType(MediaType.IMAGE_PNG).content("no-face".getBytes()))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.status").value("NO_FACE"));
+		dispatch(multipart("/api/v2/facial/verify").file(new MockMultipartFile("file", "bob.jpg", "image/jpeg", "no-face".getBytes()))
+				.param("username", "alice"), List.of(ALICE))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.status").value("NO_FACE"));
+	}
+
+	@Test
+	void rejectsAnEmptyMultipartImage() throws Exception {
+		dispatch(multipart("/api/v2/facial/recognize").file(new MockMultipartFile("file", "empty.jpg", "image/jpeg", new byte[0])))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.status").value("FAILED"));
+	}
+
+	@Test
+	void rejectsAnImageOverTheSizeLimit() throws Exception {
+		fixture.properties().getExtraction().setMaxImageSize(DataSize.ofBytes(8));
+
+		dispatch(post("/api/v2/facial/recognize").contentType(MediaType.APPLICATION_OCTET_STREAM).content(new byte[64]))
+				.andExpect(status().isPayloadTooLarge())
+				.andExpect(jsonPath("$.status").value("FAILED"));
+		assertThat(strategy.extractions()).isZero();
+	}
+
+	@Test
+	void rejectsRequestsWhileExtractionIsSaturated() throws Exception {
+		fixture.properties().getExtraction().setThreads(1);
+		fixture.properties().getExtraction().setQueueCapacity(0);
+		CountDownLatch gate = new CountDownLatch(1);
+		strategy.holdUntil(gate);
+		CompletableFuture<byte[]> busy = fixture.extractor().extractAsync(fixture.read("other"));
+		try {
+			dispatch(post("/api/v2/facial/recognize").contentType(MediaType.IMAGE_JPEG).content("face".getBytes()))
+					.andExpect(status().isTooManyRequests())
+					.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+			dispatch(post("/api/v2/facial/verify").param("username", "alice")
+					.contentType(MediaType.IMAGE_JPEG).content("face".getBytes()), List.of(ALICE))
+					.andExpect(status().isTooManyRequests())
+					.andExpect(jsonPath("$.status").value("FAILED"));
+		} finally {
+			gate.countDown();
+		}
+		assertThat(busy.join()).isNull();
+	}
+
+	@Test
+	void verifiesARawImageBody() throws Exception {
+		strategy.face("face", ALICE);
+
+		dispatch(post("/api/v2/facial/verify").param("username", "alice")
+				.contentType(MediaType.IMAGE_JPEG).content("face".getBytes()), List.of(ALICE))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.status").value("MATCH"))
+				.andExpect(jsonPath("$.score").value(1.0));
+	}
+
+	@Test
+	void verifiesAMultipartImage() throws Exception {
+		strategy.face("face", EmbeddingCodec.encode(new float[]{0, 1, 0, 0}));
+
+		dispatch(multipart("/api/v2/facial/verify").file(new MockMultipartFile("file", "bob.jpg", "image/jpeg", "face".getBytes()))
+				.param("username", "alice"), List.of(ALICE))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.status").value("NO_MATCH"));
+	}
+
+	@Test
+	void reportsAnUnknownUserAsNotFound() throws Exception {
+		when(userRepository.findTemplatesByUsername("nobody")).thenReturn(List.of());
+
+		dispatch(post("/api/v2/facial/verify").param("username", "nobody")
+				.contentType(MediaType.IMAGE_JPEG).content("face".getBytes()))
+				.andExpect(status().isNotFound())
+				.andExpect(jsonPath("$.status").value("NOT_FOUND"));
+		assertThat(strategy.extractions()).isZero();
+	}
+
+	private ResultActions dispatch(MockHttpServletRequestBuilder builder, List<byte[]> aliceTemplates) throws Exception {
+		templateCache.put("alice", aliceTemplates);
+		return dispatch(builder);
+	}
+
+	/**
+	 * Performs the request, waits for the endpoint's future, then dispatches its result.
+	 */
+	private ResultActions dispatch(MockHttpServletRequestBuilder builder) throws Exception {
+		MockMvc mvc = MockMvcBuilders.standaloneSetup(controller()).build();
+		MvcResult result = mvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+		result.getAsyncResult();
+		return mvc.perform(asyncDispatch(result));
+	}
+
+	private AsyncFacialRecognitionController controller() {
+		if (controller == null) {
+			controller = new AsyncFacialRecognitionController(userRepository, strategy, fixture.extractor(),
+					fixture.bufferPool(), (query, k) -> {
+						scoringThread = Thread.currentThread();
+						return List.of(new SearchHit(1, "alice", strategy.similarity(query, ALICE)));
+					}, templateCache, fixture.properties(), new RecognitionMetrics(fixture.registry()));
+		}
+		return controller;
+	}
+}
@@ -0,0 +1,49 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.config.FacialRecognitionProperties.QuantizationMode;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.example.facialrecognition.index.TestEmbeddings.quantized;
+import static com.example.facialrecognition.index.TestEmbeddings.randomEmbedding;
+import static com.example.facialrecognition.index.TestEmbeddings.randomUnitVector;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddingIndexBatchSearchTests {
+
+	private static final int DIMENSION = 128;
+	private static final int GALLERY_SIZE = 1500;
+
+	@ParameterizedTest
+	@EnumSource(value = QuantizationMode.class, names = {"NONE", "INT8"})
+	void batchSearchReturnsTheSameHitsAsOneSearchPerQuery(QuantizationMode mode) {
+		FacialRecognitionProperties properties = quantized(mode);
+		EmbeddingIndex index = new EmbeddingIndex(null, null, null, properties);
+
+		Random random = new Random(7);
+		for (int i = 0; i < GALLERY_SIZE; i++) {
+			index.upsert(i, "user" + i, randomEmbedding(random, DIMENSION));
+		}
+
+		float[][] queries = new float[17][];
+		for (int q = 0; q < queries.length; q++) {
+			queries[q] = randomUnitVector(random, DIMENSION);
+		}
+		queries[5] = new float[DIMENSION / 2]; // Wrong dimension: no candidates, without affecting the others
+
+		List<List<SearchHit>> batch = index.searchBatch(queries, 5);
+
+		assertThat(batch).hasSize(queries.length);
+		for (int q = 0; q < queries.length; q++) {
+			if (q == 5) {
+				assertThat(batch.get(q)).isEmpty();
+			} else {
+				assertThat(batch.get(q)).containsExactlyElementsOf(index.search(queries[q], 5));
+			}
+		}
+	}
+}
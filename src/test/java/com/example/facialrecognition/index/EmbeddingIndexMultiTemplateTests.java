@@ -0,0 +1,69 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.config.FacialRecognitionProperties.QuantizationMode;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.example.facialrecognition.index.TestEmbeddings.quantized;
+import static com.example.facialrecognition.index.TestEmbeddings.randomEmbedding;
+import static com.example.facialrecognition.index.TestEmbeddings.randomUnitVector;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EmbeddingIndexMultiTemplateTests {
+
+	private static final int DIMENSION = 128;
+	private static final int GALLERY_SIZE = 1500;
+
+	@ParameterizedTest
+	@EnumSource(value = QuantizationMode.class, names = {"NONE", "INT8"})
+	void userIsScoredByTheirBestTemplate(QuantizationMode mode) {
+		FacialRecognitionProperties properties = quantized(mode);
+		EmbeddingIndex index = new EmbeddingIndex(null, null, null, properties);
+
+		Random random = new Random(7);
+		for (int i = 0; i < GALLERY_SIZE; i++) {
+			index.upsert(i, "user" + i, randomEmbedding(random, DIMENSION));
+		}
+		float[] second = randomUnitVector(random, DIMENSION);
+		index.upsert(GALLERY_SIZE, "user42", EmbeddingCodec.encode(second));
+
+		List<SearchHit> hits = index.search(second, 3);
+
+		assertThat(index.size()).isEqualTo(GALLERY_SIZE + 1);
+		assertThat(index.userCount()).isEqualTo(GALLERY_SIZE);
+		assertThat(hits).extracting(SearchHit::username).doesNotHaveDuplicates();
+		assertThat(hits.get(0).username()).isEqualTo("user42");
+		assertThat(hits.get(0).templateId()).isEqualTo(GALLERY_SIZE);
+		assertThat(hits.get(0).score()).isCloseTo(1.0, within(0.01));
+	}
+
+	@Test
+	void hnswFindsAUserThroughAnyOfTheirTemplates() {
+		EmbeddingIndex index = new EmbeddingIndex(null, null, null, new FacialRecognitionProperties());
+		Random random = new Random(11);
+		HnswSearchEngine hnsw = new HnswSearchEngine(index, new FacialRecognitionProperties(), new SimpleMeterRegistry());
+		hnsw.buildGraph();
+		for (long id = 1; id <= 500; id++) {
+			index.upsert(id, "user" + id, randomEmbedding(random, DIMENSION));
+		}
+		float[] first = randomUnitVector(random, DIMENSION);
+		float[] second = randomUnitVector(random, DIMENSION);
+		index.upsert(1001L, "user42", EmbeddingCodec.encode(first));
+		index.upsert(1002L, "user42", EmbeddingCodec.encode(second));
+
+		for (float[] template : List.of(first, second)) {
+			List<SearchHit> hits = hnsw.search(EmbeddingCodec.encode(template), 1);
+			assertThat(hits).hasSize(1);
+			assertThat(hits.get(0).username()).isEqualTo("user42");
+			assertThat(hits.get(0).score()).isGreaterThan(0.99);
+		}
+	}
+}
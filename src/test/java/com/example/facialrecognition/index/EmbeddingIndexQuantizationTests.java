@@ -0,0 +1,58 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.config.FacialRecognitionProperties.QuantizationMode;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.example.facialrecognition.index.TestEmbeddings.quantized;
+import static com.example.facialrecognition.index.TestEmbeddings.randomUnitVector;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EmbeddingIndexQuantizationTests {
+
+	private static final int DIMENSION = 128;
+	private static final int GALLERY_SIZE = 3000;
+
+	@ParameterizedTest
+	@EnumSource(value = QuantizationMode.class, names = {"INT8", "PQ"})
+	void quantizedSearchWithRerankMatchesExactSearch(QuantizationMode mode) {
+		FacialRecognitionProperties properties = quantized(mode);
+		properties.getQuantization().setRerankFactor(10);
+		EmbeddingIndex quantized = new EmbeddingIndex(null, null, null, properties);
+		EmbeddingIndex exact = new EmbeddingIndex(null, null, null, new FacialRecognitionProperties());
+
+		Random random = new Random(13);
+		float[][] gallery = new float[GALLERY_SIZE][];
+		for (int i = 0; i < GALLERY_SIZE; i++) {
+			gallery[i] = randomUnitVector(random, DIMENSION);
+			byte[] embedding = EmbeddingCodec.encode(gallery[i]);
+			quantized.upsert(i, "user" + i, embedding);
+			exact.upsert(i, "user" + i, embedding);
+		}
+
+		int agreed = 0;
+		for (int q = 0; q < 100; q++) {
+			// Noisy copy of an enrolled vector, like a second photo of the same person
+			float[] query = gallery[random.nextInt(GALLERY_SIZE)].clone();
+			for (int d = 0; d < DIMENSION; d++) {
+				query[d] += (float) random.nextGaussian() * 0.05f;
+			}
+			EmbeddingCodec.normalize(query);
+
+			List<SearchHit> expected = exact.search(query, 1);
+			List<SearchHit> actual = quantized.search(query, 1);
+			if (actual.get(0).templateId() == expected.get(0).templateId()) {
+				agreed++;
+				// Re-ranking reports the full-precision score, not the approximate one
+				assertThat(actual.get(0).score()).isCloseTo(expected.get(0).score(), within(1e-5));
+			}
+		}
+		assertThat(agreed).isGreaterThanOrEqualTo(98);
+	}
+}
@@ -0,0 +1,57 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.example.facialrecognition.index.TestEmbeddings.randomEmbedding;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddingIndexRemovalTests {
+
+	private static final int DIMENSION = 32;
+
+	@Test
+	void removedTemplatesAreNoLongerFound() {
+		EmbeddingIndex index = new EmbeddingIndex(null, null, null, new FacialRecognitionProperties());
+		HnswSearchEngine hnsw = new HnswSearchEngine(index, new FacialRecognitionProperties(), new SimpleMeterRegistry());
+		hnsw.buildGraph();
+		Random random = new Random(3);
+		for (long id = 1; id <= 300; id++) {
+			index.upsert(id, "user" + id, randomEmbedding(random, DIMENSION));
+		}
+		byte[] first = randomEmbedding(random, DIMENSION);
+		byte[] second = randomEmbedding(random, DIMENSION);
+		index.upsert(1001L, "alice", first);
+		index.upsert(1002L, "alice", second);
+
+		// One of two templates removed: the user is still found through the other one
+		assertThat(index.remove(1001L)).isTrue();
+		assertThat(topHit(index, hnsw, second).templateId()).isEqualTo(1002L);
+		assertThat(topHit(index, hnsw, first).username()).isNotEqualTo("alice");
+
+		// Last template removed: the user disappears from both engines
+		assertThat(index.remove(1002L)).isTrue();
+		assertThat(index.remove(1002L)).isFalse();
+		assertThat(topHit(index, hnsw, second).username()).isNotEqualTo("alice");
+		assertThat(index.size()).isEqualTo(300);
+		assertThat(index.userCount()).isEqualTo(300);
+
+		// Re-enrolled afterwards
+		index.upsert(1003L, "alice", first);
+		assertThat(topHit(index, hnsw, first).templateId()).isEqualTo(1003L);
+		assertThat(index.userCount()).isEqualTo(301);
+	}
+
+	/**
+	 * @return The best hit of the exact engine, after checking that HNSW agrees with it.
+	 */
+	private static SearchHit topHit(EmbeddingIndex index, HnswSearchEngine hnsw, byte[] query) {
+		SearchHit exact = index.search(EmbeddingCodec.decode(query), 1).get(0);
+		assertThat(hnsw.search(query, 1).get(0).templateId()).isEqualTo(exact.templateId());
+		return exact;
+	}
+}
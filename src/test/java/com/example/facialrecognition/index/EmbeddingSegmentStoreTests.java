@@ -0,0 +1,68 @@
+package com.example.facialrecognition.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddingSegmentStoreTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void reopenedSegmentRestoresLatestRowPerTemplate() throws Exception {
+		EmbeddingSegmentStore store = new EmbeddingSegmentStore(directory, "embeddings");
+		store.initialize(4);
+		store.write(0, 10L, "alice", new float[]{1, 0, 0, 0});
+		store.write(1, 11L, "bob", new float[]{0, 1, 0, 0});
+		store.write(0, 10L, "alice", new float[]{0, 0, 1, 0}); // Re-enrollment appends a new record
+		store.close();
+
+		EmbeddingSegmentStore reopened = new EmbeddingSegmentStore(directory, "embeddings");
+		EmbeddingSegmentStore.Restored restored = reopened.open();
+
+		assertThat(restored).isNotNull();
+		assertThat(restored.dimension()).isEqualTo(4);
+		assertThat(restored.templateIds()).containsExactly(11L, 10L);
+		assertThat(restored.usernames()).containsExactly("bob", "alice");
+		assertThat(reopened.dot(new float[]{0, 0, 1, 0}, 0, 1)).isEqualTo(1f);
+
+		List<Integer> scannedSlots = new ArrayList<>();
+		reopened.scan(0, reopened.physicalRows(), (rows, rowsOffset, count, slots, slotsOffset) -> {
+			for (int i = 0; i < count; i++) {
+				scannedSlots.add(slots[slotsOffset + i]);
+			}
+		});
+		assertThat(scannedSlots).containsExactly(0, 1); // The superseded record is skipped
+		reopened.close();
+	}
+
+	@Test
+	void deletedTemplatesAndTheCheckpointSurviveAReopen() throws Exception {
+		EmbeddingSegmentStore store = new EmbeddingSegmentStore(directory, "embeddings");
+		store.initialize(4);
+		store.write(0, 10L, "alice", new float[]{1, 0, 0, 0});
+		store.write(1, 11L, "bob", new float[]{0, 1, 0, 0});
+		store.delete(0); // Appends a tombstone
+		store.checkpoint(42L);
+		store.close();
+
+		EmbeddingSegmentStore reopened = new EmbeddingSegmentStore(directory, "embeddings");
+		EmbeddingSegmentStore.Restored restored = reopened.open();
+
+		assertThat(restored.templateIds()).containsExactly(11L);
+		assertThat(restored.usernames()).containsExactly("bob");
+		assertThat(reopened.checkpoint()).isEqualTo(42L);
+		reopened.close();
+	}
+
+	@Test
+	void missingSegmentIsNotRestored() throws Exception {
+		assertThat(new EmbeddingSegmentStore(directory, "embeddings").open()).isNull();
+	}
+}
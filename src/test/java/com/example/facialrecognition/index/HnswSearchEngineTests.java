@@ -0,0 +1,59 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.example.facialrecognition.index.TestEmbeddings.randomEmbedding;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswSearchEngineTests {
+
+	private static final int DIMENSION = 32;
+
+	@Test
+	void recallAgainstExactScanIsHigh() {
+		EmbeddingIndex index = new EmbeddingIndex(null, null, null, new FacialRecognitionProperties());
+		Random random = new Random(7);
+		for (long id = 1; id <= 2000; id++) {
+			index.upsert(id, "user" + id, randomEmbedding(random, DIMENSION));
+		}
+		HnswSearchEngine hnsw = new HnswSearchEngine(index, new FacialRecognitionProperties(), new SimpleMeterRegistry());
+		hnsw.buildGraph();
+
+		int queries = 100;
+		int hits = 0;
+		for (int q = 0; q < queries; q++) {
+			byte[] query = randomEmbedding(random, DIMENSION);
+			List<SearchHit> exact = index.search(EmbeddingCodec.decode(query), 1);
+			List<SearchHit> approximate = hnsw.search(query, 5);
+			if (approximate.stream().anyMatch(hit -> hit.templateId() == exact.get(0).templateId())) {
+				hits++;
+			}
+		}
+		assertThat(hits).isGreaterThanOrEqualTo(95);
+	}
+
+	@Test
+	void reEnrolledTemplateIsFoundByItsNewEmbedding() {
+		EmbeddingIndex index = new EmbeddingIndex(null, null, null, new FacialRecognitionProperties());
+		Random random = new Random(11);
+		HnswSearchEngine hnsw = new HnswSearchEngine(index, new FacialRecognitionProperties(), new SimpleMeterRegistry());
+		hnsw.buildGraph();
+		for (long id = 1; id <= 500; id++) {
+			index.upsert(id, "user" + id, randomEmbedding(random, DIMENSION));
+		}
+
+		byte[] replacement = randomEmbedding(random, DIMENSION);
+		index.upsert(42L, "user42", replacement);
+
+		List<SearchHit> hits = hnsw.search(replacement, 1);
+		assertThat(hits).hasSize(1);
+		assertThat(hits.get(0).username()).isEqualTo("user42");
+		assertThat(hits.get(0).score()).isGreaterThan(0.99);
+	}
+}
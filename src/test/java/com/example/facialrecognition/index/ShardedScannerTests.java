@@ -0,0 +1,61 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.facialrecognition.index.TestEmbeddings.randomEmbedding;
+import static com.example.facialrecognition.index.TestEmbeddings.randomUnitVector;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedScannerTests {
+
+	private static final int DIMENSION = 64;
+
+	@Test
+	void parallelScanReturnsTheSameHitsAsASingleThread() {
+		EmbeddingIndex sequential = index(1);
+		EmbeddingIndex parallel = index(4);
+		Random random = new Random(7);
+		for (int i = 0; i < 3000; i++) {
+			byte[] embedding = randomEmbedding(random, DIMENSION);
+			sequential.upsert(i, "user" + (i % 2500), embedding); // Some users get a second template
+			parallel.upsert(i, "user" + (i % 2500), embedding);
+		}
+
+		for (int q = 0; q < 20; q++) {
+			float[] query = randomUnitVector(random, DIMENSION);
+			assertThat(parallel.search(query, 5)).containsExactlyElementsOf(sequential.search(query, 5));
+		}
+	}
+
+	@Test
+	void remainingShardsAreSkippedOnceEveryQueryHasAConfidentMatch() {
+		FacialRecognitionProperties.Scan settings = new FacialRecognitionProperties.Scan();
+		settings.setParallelism(1);
+		settings.setShardSize(DataSize.ofBytes(64));
+		settings.setEarlyExitScore(0.9);
+		ShardedScanner scanner = new ShardedScanner(settings);
+		AtomicInteger scannedShards = new AtomicInteger();
+
+		TopKCollector[] topK = scanner.scan(640, 1, 1, 3, (from, to, shortlists) -> {
+			scannedShards.incrementAndGet();
+			for (int unit = from; unit < to; unit++) {
+				shortlists[0].offer(unit, unit == 130 ? 0.95 : 0.1);
+			}
+		});
+
+		assertThat(scannedShards).hasValue(3);
+		assertThat(topK[0].best()).isEqualTo(0.95);
+	}
+
+	private static EmbeddingIndex index(int parallelism) {
+		FacialRecognitionProperties properties = new FacialRecognitionProperties();
+		properties.getSearch().getScan().setParallelism(parallelism);
+		properties.getSearch().getScan().setShardSize(DataSize.ofKilobytes(16));
+		return new EmbeddingIndex(null, null, null, properties);
+	}
+}
@@ -0,0 +1,50 @@
+package com.example.facialrecognition.index;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import com.example.facialrecognition.config.FacialRecognitionProperties.QuantizationMode;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+
+import java.util.Random;
+
+/**
+ * Random galleries and index settings shared by the index tests.
+ */
+public final class TestEmbeddings {
+
+	/**
+	 * Gallery size (in users) at which the quantized test indexes train their quantizer.
+	 */
+	static final int TRAINING_SIZE = 1000;
+
+	private TestEmbeddings() {
+	}
+
+	/**
+	 * @return An L2-normalized vector with Gaussian components.
+	 */
+	public static float[] randomUnitVector(Random random, int dimension) {
+		float[] vector = new float[dimension];
+		for (int d = 0; d < dimension; d++) {
+			vector[d] = (float) random.nextGaussian();
+		}
+		EmbeddingCodec.normalize(vector);
+		return vector;
+	}
+
+	/**
+	 * @return A random unit vector encoded as a stored embedding.
+	 */
+	public static byte[] randomEmbedding(Random random, int dimension) {
+		return EmbeddingCodec.encode(randomUnitVector(random, dimension));
+	}
+
+	/**
+	 * @return Settings for an index using the given quantization once it holds {@link #TRAINING_SIZE} users.
+	 */
+	static FacialRecognitionProperties quantized(QuantizationMode mode) {
+		FacialRecognitionProperties properties = new FacialRecognitionProperties();
+		properties.getQuantization().setMode(mode);
+		properties.getQuantization().setTrainingSize(TRAINING_SIZE);
+		return properties;
+	}
+}
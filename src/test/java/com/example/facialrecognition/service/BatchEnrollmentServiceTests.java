@@ -0,0 +1,206 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.dto.BatchEnrollmentResponse;
+import com.example.facialrecognition.dto.EnrollmentItemResult;
+import com.example.facialrecognition.dto.EnrollmentItemResult.Status;
+import com.example.facialrecognition.index.EmbeddingIndex;
+import com.example.facialrecognition.repository.UserRepository;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.example.facialrecognition.index.TestEmbeddings.randomUnitVector;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Enrolls through the whole pipeline into the in-memory database and the resident gallery.
+ */
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:batch-enrollment",
+		"facial.recognition.strategy=fake",
+		"facial.recognition.changes.enabled=false",
+		"facial.recognition.templates.max-per-user=2",
+		"facial.recognition.extraction.threads=4",
+		"facial.recognition.batch.max-in-flight=2",
+		"facial.recognition.batch.persist-batch-size=3",
+		"facial.recognition.batch.max-entry-size=1KB"
+})
+class BatchEnrollmentServiceTests {
+
+	private static final int DIMENSION = 16;
+
+	@Autowired
+	private BatchEnrollmentService service;
+
+	@Autowired
+	private ExtractionFixture.FakeStrategy strategy;
+
+	@Autowired
+	private EmbeddingIndex embeddingIndex;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private final Random random = new Random(6);
+
+	@Test
+	void enrollsArchiveEntriesUnderTheirDirectoryOrFileName() throws IOException {
+		float[] aliceFront = randomUnitVector(random, DIMENSION);
+		float[] bob = randomUnitVector(random, DIMENSION);
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("alice/front.jpg", face("alice-front", aliceFront));
+		entries.put("alice/side.jpg", face("alice-side", randomUnitVector(random, DIMENSION)));
+		entries.put("bob.jpg", face("bob", bob));
+		entries.put("__MACOSX/alice/._front.jpg", face("resource-fork", randomUnitVector(random, DIMENSION)));
+		entries.put("carol/.thumbnail.jpg", face("thumbnail", randomUnitVector(random, DIMENSION)));
+		entries.put("dave.jpg", "no-face".getBytes());
+		entries.put("erin.jpg", "broken".getBytes());
+		entries.put("frank.jpg", face("f".repeat(2048), randomUnitVector(random, DIMENSION)));
+
+		BatchEnrollmentResponse response = service.enrollArchive(new ByteArrayInputStream(zip(entries)));
+
+		assertThat(response.items())
+				.extracting(EnrollmentItemResult::item, EnrollmentItemResult::username, EnrollmentItemResult::status)
+				.containsExactlyInAnyOrder(
+						tuple("alice/front.jpg", "alice", Status.CREATED),
+						tuple("alice/side.jpg", "alice", Status.CREATED),
+						tuple("bob.jpg", "bob", Status.CREATED),
+						tuple("dave.jpg", "dave", Status.NO_FACE),
+						tuple("erin.jpg", "erin", Status.FAILED),
+						tuple("frank.jpg", "frank", Status.FAILED));
+		assertThat(response.created()).isEqualTo(3);
+		assertThat(response.failed()).isEqualTo(3);
+		assertThat(userRepository.findTemplatesByUsername("alice")).hasSize(2);
+		assertThat(userRepository.findByUsername("carol")).isEmpty();
+		assertThat(indexedFor("alice", aliceFront)).isTrue();
+		assertThat(indexedFor("bob", bob)).isTrue();
+	}
+
+	@Test
+	void replacesTheOldestTemplatesOnceAUserHasMaxPerUser() {
+		List<float[]> embeddings = new ArrayList<>();
+		List<MultipartFile> files = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			embeddings.add(randomUnitVector(random, DIMENSION));
+			files.add(new MockMultipartFile("files", "gina.jpg", "image/jpeg", face("gina-" + i, embeddings.get(i))));
+		}
+
+		BatchEnrollmentResponse first = service.enrollFiles(files);
+		assertThat(first.created() + first.updated()).isEqualTo(3);
+		assertThat(userRepository.findTemplatesByUsername("gina")).hasSize(2);
+		assertThat(embeddings.stream().filter(embedding -> indexedFor("gina", embedding))).hasSize(2);
+
+		float[] replacement = randomUnitVector(random, DIMENSION);
+		BatchEnrollmentResponse second = service.enrollFiles(List.of(
+				new MockMultipartFile("files", "gina.png", "image/png", face("gina-3", replacement))));
+		assertThat(second.items()).extracting(EnrollmentItemResult::status).containsExactly(Status.UPDATED);
+		assertThat(userRepository.findTemplatesByUsername("gina")).hasSize(2);
+		assertThat(indexedFor("gina", replacement)).isTrue();
+	}
+
+	@Test
+	void boundsTheImagesInFlightToMaxInFlight() {
+		List<MultipartFile> files = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			files.add(new MockMultipartFile("files", "user" + i + ".jpg", "image/jpeg",
+					face("user-" + i, randomUnitVector(random, DIMENSION))));
+		}
+
+		BatchEnrollmentResponse response = service.enrollFiles(files);
+
+		assertThat(response.created()).isEqualTo(20);
+		assertThat(strategy.maxRunning()).as("extraction threads are idle rather than running ahead").isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	@DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD) // Stops the service's writer pool
+	void reportsUnsavedImagesAsFailedWhenTheWriterStops() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		strategy.holdUntil(gate);
+		try {
+			List<MultipartFile> files = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				files.add(new MockMultipartFile("files", "held" + i + ".jpg", "image/jpeg",
+						face("held-" + i, randomUnitVector(random, DIMENSION))));
+			}
+			int extractions = strategy.extractions();
+			CompletableFuture<BatchEnrollmentResponse> enrollment = CompletableFuture.supplyAsync(() -> service.enrollFiles(files));
+			while (strategy.extractions() < extractions + 2) {
+				Thread.sleep(10);
+			}
+
+			service.shutdown(); // As on application shutdown, while two images are extracting and one waits for room
+
+			BatchEnrollmentResponse response = enrollment.get(10, TimeUnit.SECONDS);
+			assertThat(response.items()).extracting(EnrollmentItemResult::status)
+					.containsExactly(Status.FAILED, Status.FAILED, Status.FAILED);
+		} finally {
+			gate.countDown();
+			strategy.holdUntil(null);
+		}
+	}
+
+	@Test
+	void derivesUsernamesFromTheParentDirectoryOrTheFileName() {
+		assertThat(BatchEnrollmentService.usernameFor("alice/front.jpg")).isEqualTo("alice");
+		assertThat(BatchEnrollmentService.usernameFor("staff/bob/side.png")).isEqualTo("bob");
+		assertThat(BatchEnrollmentService.usernameFor("staff\\carol\\front.jpg")).isEqualTo("carol");
+		assertThat(BatchEnrollmentService.usernameFor("dave.jpg")).isEqualTo("dave");
+		assertThat(BatchEnrollmentService.usernameFor("/erin.jpg")).isEqualTo("erin");
+		assertThat(BatchEnrollmentService.usernameFor("frank")).isEqualTo("frank");
+		assertThat(BatchEnrollmentService.usernameFor(" /front.jpg")).isNull();
+	}
+
+	private byte[] face(String image, float[] embedding) {
+		return strategy.face(image, EmbeddingCodec.encode(embedding));
+	}
+
+	private boolean indexedFor(String username, float[] embedding) {
+		return embeddingIndex.search(embedding, 5).stream()
+				.anyMatch(hit -> hit.username().equals(username) && hit.score() > 0.99);
+	}
+
+	private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+			zip.putNextEntry(new ZipEntry("staff/"));
+			zip.closeEntry();
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				zip.putNextEntry(new ZipEntry(entry.getKey()));
+				zip.write(entry.getValue());
+				zip.closeEntry();
+			}
+		}
+		return archive.toByteArray();
+	}
+
+	@TestConfiguration
+	static class FakeStrategyConfiguration {
+
+		@Bean
+		ExtractionFixture.FakeStrategy facialRecognitionStrategy() {
+			return new ExtractionFixture.FakeStrategy();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.dto.BatchRecognitionResponse;
+import com.example.facialrecognition.dto.RecognitionItemResult;
+import com.example.facialrecognition.dto.RecognitionItemResult.Status;
+import com.example.facialrecognition.index.SearchHit;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class BatchRecognitionServiceTests {
+
+	private static final byte[] ALICE = EmbeddingCodec.encode(new float[]{1, 0, 0, 0});
+
+	@RegisterExtension
+	final ExtractionFixture fixture = new ExtractionFixture();
+
+	private final ExtractionFixture.FakeStrategy strategy = fixture.strategy();
+	private final BatchRecognitionService service = new BatchRecognitionService(strategy,
+			(query, k) -> List.of(new SearchHit(1, "alice", strategy.similarity(query, ALICE))),
+			fixture.extractor(), fixture.bufferPool(), new RecognitionMetrics(fixture.registry()));
+
+	@Test
+	void reportsAnOversizedImageWithoutFailingTheBatch() {
+		strategy.face("face", ALICE);
+		MockMultipartFile oversized = new MockMultipartFile("files", "huge.jpg", "image/jpeg", "face".getBytes()) {
+			@Override
+			public long getSize() {
+				return Long.MAX_VALUE; // Beyond what any image buffer can hold
+			}
+		};
+
+		BatchRecognitionResponse response = service.recognize(List.of(
+				new MockMultipartFile("files", "alice.jpg", "image/jpeg", "face".getBytes()),
+				oversized,
+				new MockMultipartFile("files", "empty.jpg", "image/jpeg", "no-face".getBytes())), 1);
+
+		assertThat(response.items())
+				.extracting(RecognitionItemResult::item, RecognitionItemResult::status, RecognitionItemResult::username)
+				.containsExactly(
+						tuple("alice.jpg", Status.MATCH, "alice"),
+						tuple("huge.jpg", Status.FAILED, null),
+						tuple("empty.jpg", Status.NO_FACE, null));
+		assertThat(response.items().get(1).message()).startsWith("Image exceeds the maximum size");
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingExtractorTests {
+
+	@RegisterExtension
+	final ExtractionFixture fixture = new ExtractionFixture();
+
+	private final ExtractionFixture.FakeStrategy strategy = fixture.strategy();
+
+	@Test
+	void answersRepeatedImagesFromTheCache() throws IOException {
+		strategy.face("face-1", EmbeddingCodec.encode(new float[]{1, 0, 0, 0}));
+		strategy.face("face-2", EmbeddingCodec.encode(new float[]{0, 1, 0, 0}));
+
+		byte[] first = fixture.extractor().extract(fixture.read("face-1"));
+		byte[] second = fixture.extractor().extract(fixture.read("face-1"));
+		fixture.extractor().extract(fixture.read("face-2"));
+
+		assertThat(second).isEqualTo(first);
+		assertThat(strategy.extractions()).isEqualTo(2);
+		assertThat(fixture.registry().get("cache.gets").tag("cache", "embeddings").tag("result", "hit").functionCounter().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void cachesNoFaceResults() throws IOException {
+		assertThat(fixture.extractor().extract(fixture.read("no-face"))).isNull();
+		assertThat(fixture.extractor().extractWhenAvailable(fixture.read("no-face")).join()).isNull();
+
+		assertThat(strategy.extractions()).isEqualTo(1);
+	}
+
+	@Test
+	void neverCachesFailedExtractions() throws IOException {
+		assertThatThrownBy(() -> fixture.extractor().extract(fixture.read("broken"))).isInstanceOf(EmbeddingExtractionException.class);
+		assertThatThrownBy(() -> fixture.extractor().extract(fixture.read("broken"))).isInstanceOf(EmbeddingExtractionException.class);
+
+		assertThat(strategy.extractions()).isEqualTo(2);
+	}
+
+	@Test
+	void hashesUnderACapacityPermitSoASaturatedPoolRejectsEvenCachedImages() throws IOException {
+		fixture.properties().getExtraction().setThreads(1);
+		fixture.properties().getExtraction().setQueueCapacity(0);
+		strategy.face("face", EmbeddingCodec.encode(new float[]{1, 0, 0, 0}));
+		fixture.extractor().extract(fixture.read("face"));
+
+		CountDownLatch gate = new CountDownLatch(1);
+		strategy.holdUntil(gate);
+		CompletableFuture<byte[]> busy = fixture.extractor().extractAsync(fixture.read("other"));
+		try {
+			assertThatThrownBy(() -> fixture.extractor().extractAsync(fixture.read("face")))
+					.isInstanceOf(ExtractionOverloadedException.class);
+		} finally {
+			gate.countDown();
+		}
+		assertThat(busy.join()).isNull();
+		assertThat(fixture.extractor().extract(fixture.read("face"))).isNotNull();
+		assertThat(strategy.extractions()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,146 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedding extraction wired to a {@link FakeStrategy}, shared by the service and controller tests.
+ * Register it as a {@code @RegisterExtension} field: the extraction pool is shut down after each test.
+ * <p>
+ * The buffer pool and extractor are created on first use, so a test can adjust {@link #properties()} before.
+ */
+public final class ExtractionFixture implements AfterEachCallback {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final FacialRecognitionProperties properties = new FacialRecognitionProperties();
+	private final FakeStrategy strategy = new FakeStrategy();
+	private ImageBufferPool bufferPool;
+	private EmbeddingExtractor extractor;
+
+	public SimpleMeterRegistry registry() {
+		return registry;
+	}
+
+	public FacialRecognitionProperties properties() {
+		return properties;
+	}
+
+	public FakeStrategy strategy() {
+		return strategy;
+	}
+
+	public synchronized ImageBufferPool bufferPool() {
+		if (bufferPool == null) {
+			bufferPool = new ImageBufferPool(properties, registry);
+		}
+		return bufferPool;
+	}
+
+	public synchronized EmbeddingExtractor extractor() {
+		if (extractor == null) {
+			extractor = new EmbeddingExtractor(strategy, new EmbeddingCache(properties, registry), properties, registry);
+		}
+		return extractor;
+	}
+
+	/**
+	 * @return The image in a pooled buffer, as uploads are read.
+	 */
+	public ImageBuffer read(byte[] image) throws IOException {
+		return bufferPool().read(new ByteArrayInputStream(image), image.length, Long.MAX_VALUE);
+	}
+
+	public ImageBuffer read(String image) throws IOException {
+		return read(image.getBytes());
+	}
+
+	@Override
+	public synchronized void afterEach(ExtensionContext context) {
+		if (extractor != null) {
+			extractor.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the embedding registered for an image's exact bytes and no face for any other image; images whose
+	 * content starts with {@code broken} fail. Counts extractions and the most seen running at once.
+	 */
+	public static final class FakeStrategy implements FacialRecognitionStrategy {
+
+		private final Map<ByteBuffer, byte[]> faces = new ConcurrentHashMap<>();
+		private final AtomicInteger extractions = new AtomicInteger();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxRunning = new AtomicInteger();
+		private volatile CountDownLatch gate;
+
+		/**
+		 * Registers the face found in an image.
+		 *
+		 * @return The image.
+		 */
+		public byte[] face(byte[] image, byte[] embedding) {
+			faces.put(ByteBuffer.wrap(image.clone()), embedding);
+			return image;
+		}
+
+		public byte[] face(String image, byte[] embedding) {
+			return face(image.getBytes(), embedding);
+		}
+
+		/**
+		 * Makes extractions wait until the gate opens, to hold the extraction pool busy.
+		 */
+		public void holdUntil(CountDownLatch gate) {
+			this.gate = gate;
+		}
+
+		public int extractions() {
+			return extractions.get();
+		}
+
+		public int maxRunning() {
+			return maxRunning.get();
+		}
+
+		@Override
+		public byte[] extractFacialEmbedding(byte[] imageData) {
+			extractions.incrementAndGet();
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				CountDownLatch current = gate;
+				if (current != null) {
+					current.await();
+				}
+				if (new String(imageData).startsWith("broken")) {
+					throw new EmbeddingExtractionException("Cannot extract", new IllegalStateException("broken"));
+				}
+				return faces.get(ByteBuffer.wrap(imageData));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EmbeddingExtractionException("Interrupted", e);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+
+		@Override
+		public double getMatchThreshold() {
+			return 0.9;
+		}
+
+		@Override
+		public boolean isMatch(byte[] embedding1, byte[] embedding2) {
+			return similarity(embedding1, embedding2) >= getMatchThreshold();
+		}
+	}
+}
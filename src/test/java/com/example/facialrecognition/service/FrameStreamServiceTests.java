@@ -0,0 +1,132 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.dto.FrameEvent;
+import com.example.facialrecognition.dto.FrameEvent.Type;
+import com.example.facialrecognition.index.SearchHit;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imencode;
+import static org.bytedeco.opencv.global.opencv_imgproc.FILLED;
+import static org.bytedeco.opencv.global.opencv_imgproc.rectangle;
+
+class FrameStreamServiceTests {
+
+	private static final byte[] ALICE = EmbeddingCodec.encode(new float[]{1, 0, 0, 0});
+	private static final byte[] ALICE_TURNED = EmbeddingCodec.encode(new float[]{0.98f, 0.199f, 0, 0});
+	private static final byte[] BOB = EmbeddingCodec.encode(new float[]{0, 0, 1, 0});
+
+	@RegisterExtension
+	final ExtractionFixture fixture = new ExtractionFixture();
+
+	private final AtomicInteger searches = new AtomicInteger();
+	private final ExtractionFixture.FakeStrategy strategy = fixture.strategy();
+	private final FrameStreamService service = new FrameStreamService(strategy, fixture.extractor(), (query, k) -> {
+		searches.incrementAndGet();
+		return List.of(new SearchHit(1, "alice", strategy.similarity(query, ALICE)));
+	}, fixture.properties(), fixture.registry());
+
+	@Test
+	void emitsEventsOnlyWhenTheIdentityInViewChanges() throws IOException {
+		byte[] empty = encode(scene(), ".jpg");
+		byte[] emptyAgain = encode(scene(), ".png");
+		byte[] alice = frame(new Point(640, 0), new Point(1279, 719), 250, ALICE);
+		byte[] aliceTurned = frame(new Point(0, 0), new Point(639, 719), 250, ALICE_TURNED);
+		byte[] bob = frame(new Point(640, 0), new Point(1279, 719), 10, BOB);
+
+		List<FrameEvent> events = new ArrayList<>();
+		for (byte[] frame : List.of(empty, emptyAgain, alice, aliceTurned, bob, empty)) {
+			FrameEvent event = service.process("door", fixture.read(frame));
+			if (event != null) {
+				events.add(event);
+			}
+		}
+
+		assertThat(events).extracting(FrameEvent::frame, FrameEvent::type, FrameEvent::username)
+				.containsExactly(
+						tuple(3L, Type.MATCH, "alice"),
+						tuple(5L, Type.UNKNOWN, null),
+						tuple(6L, Type.CLEARED, null));
+		assertThat(strategy.extractions()).as("the re-encoded empty frame is skipped by its hash").isEqualTo(4);
+		assertThat(fixture.registry().get("facial.extraction").timer().count()).as("every frame is hashed on the pool").isEqualTo(6);
+		assertThat(searches).as("the turned face keeps alice's identity without a search").hasValue(2);
+		assertThat(fixture.registry().get("facial.stream.frames").tag("result", "duplicate").counter().count()).isEqualTo(1);
+		assertThat(fixture.registry().get("facial.stream.frames").tag("result", "tracked").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void searchesAgainForAFaceAppearingAfterTheTrackWasCleared() throws IOException {
+		byte[] empty = encode(scene(), ".jpg");
+		byte[] alice = frame(new Point(640, 0), new Point(1279, 719), 250, ALICE);
+		byte[] aliceTurned = frame(new Point(0, 0), new Point(639, 719), 250, ALICE_TURNED);
+
+		List<FrameEvent> events = new ArrayList<>();
+		for (byte[] frame : List.of(alice, empty, aliceTurned)) {
+			FrameEvent event = service.process("door", fixture.read(frame));
+			if (event != null) {
+				events.add(event);
+			}
+		}
+
+		assertThat(events).extracting(FrameEvent::frame, FrameEvent::type)
+				.containsExactly(tuple(1L, Type.MATCH), tuple(2L, Type.CLEARED), tuple(3L, Type.MATCH));
+		assertThat(searches).as("the face after the cleared frame is not taken as the tracked one").hasValue(2);
+		assertThat(fixture.registry().get("facial.stream.frames").tag("result", "tracked").counter().count()).isZero();
+	}
+
+	@Test
+	void closingASessionForgetsItsState() throws IOException {
+		byte[] alice = frame(new Point(640, 0), new Point(1279, 719), 250, ALICE);
+
+		assertThat(service.process("door", fixture.read(alice)))
+				.extracting(FrameEvent::type).isEqualTo(Type.MATCH);
+		assertThat(service.close("door")).isTrue();
+		assertThat(service.close("door")).isFalse();
+		assertThat(service.process("door", fixture.read(alice)))
+				.extracting(FrameEvent::frame, FrameEvent::type).containsExactly(1L, Type.MATCH);
+	}
+
+	/**
+	 * Encodes the scene with a uniform block (the "face") and registers the embedding extracted from it.
+	 */
+	private byte[] frame(Point from, Point to, int level, byte[] embedding) {
+		Mat image = scene();
+		rectangle(image, from, to, new Scalar(level, level, level, 0), FILLED, 8, 0);
+		return strategy.face(encode(image, ".jpg"), embedding);
+	}
+
+	/**
+	 * A 720p frame getting darker from left to right; frames without a registered face have no face.
+	 */
+	private static Mat scene() {
+		Mat image = new Mat(720, 1280, CV_8UC3, new Scalar(0, 0, 0, 0));
+		for (int strip = 0; strip < 80; strip++) {
+			double level = 230 - strip * 2.5;
+			rectangle(image, new Point(strip * 16, 0), new Point(strip * 16 + 15, 719),
+					new Scalar(level, level, level, 0), FILLED, 8, 0);
+		}
+		return image;
+	}
+
+	private static byte[] encode(Mat image, String format) {
+		try (BytePointer buffer = new BytePointer()) {
+			imencode(format, image, buffer);
+			byte[] encoded = new byte[(int) buffer.limit()];
+			buffer.get(encoded);
+			return encoded;
+		}
+	}
+}
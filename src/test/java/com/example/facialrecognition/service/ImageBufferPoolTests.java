@@ -0,0 +1,70 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageBufferPoolTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final ImageBufferPool pool = new ImageBufferPool(properties(), registry);
+
+	@Test
+	void readsStreamsOfKnownAndUnknownSizeIntoDirectBuffers() throws IOException {
+		byte[] image = randomBytes(300_000);
+
+		for (long sizeHint : new long[]{image.length, -1, 10}) {
+			try (ImageBuffer buffer = pool.read(new ByteArrayInputStream(image), sizeHint, Long.MAX_VALUE)) {
+				ByteBuffer data = buffer.data();
+				byte[] read = new byte[data.remaining()];
+				data.get(read);
+
+				assertThat(data.isDirect()).isTrue();
+				assertThat(read).isEqualTo(image);
+			}
+		}
+	}
+
+	@Test
+	void reusesReleasedBuffers() throws IOException {
+		byte[] image = randomBytes(100_000);
+		pool.read(new ByteArrayInputStream(image), image.length, Long.MAX_VALUE).close();
+		double allocated = registry.get("facial.image_buffers.allocated").counter().count();
+
+		pool.read(new ByteArrayInputStream(image), image.length, Long.MAX_VALUE).close();
+
+		assertThat(registry.get("facial.image_buffers.allocated").counter().count()).isEqualTo(allocated);
+		assertThat(registry.get("facial.image_buffers.idle").gauge().value()).isPositive();
+	}
+
+	@Test
+	void rejectsImagesOverTheLimit() {
+		byte[] image = randomBytes(5000);
+
+		assertThatThrownBy(() -> pool.read(new ByteArrayInputStream(image), -1, 4096))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> pool.read(new ByteArrayInputStream(image), image.length, 4096))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static FacialRecognitionProperties properties() {
+		FacialRecognitionProperties properties = new FacialRecognitionProperties();
+		properties.getExtraction().setMaxPooledBufferSize(DataSize.ofKilobytes(256));
+		return properties;
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(42).nextBytes(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.facialrecognition.service;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imencode;
+
+class ImageHeaderTests {
+
+	@ParameterizedTest
+	@ValueSource(strings = {".jpg", ".png"})
+	void readsDimensionsWithoutDecoding(String format) {
+		byte[] encoded = encode(new Mat(301, 517, CV_8UC3, new Scalar(90, 120, 150, 0)), format);
+
+		assertThat(ImageHeader.dimensions(encoded)).containsExactly(517, 301);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {".jpg", ".png"})
+	void readsDimensionsFromTheBufferPosition(String format) {
+		byte[] encoded = encode(new Mat(301, 517, CV_8UC3, new Scalar(90, 120, 150, 0)), format);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length + 7);
+		buffer.position(7).mark();
+		buffer.put(encoded).reset();
+
+		assertThat(ImageHeader.dimensions(buffer)).containsExactly(517, 301);
+		assertThat(buffer.position()).isEqualTo(7);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {".jpg", ".png"})
+	void returnsNullForTruncatedOrUnknownData(String format) {
+		byte[] encoded = encode(new Mat(16, 16, CV_8UC3, new Scalar(0, 0, 0, 0)), format);
+
+		assertThat(ImageHeader.dimensions(new byte[]{encoded[0], encoded[1], encoded[2]})).isNull();
+		assertThat(ImageHeader.dimensions("not an image".getBytes())).isNull();
+	}
+
+	private static byte[] encode(Mat image, String format) {
+		try (BytePointer buffer = new BytePointer()) {
+			imencode(format, image, buffer);
+			byte[] encoded = new byte[(int) buffer.limit()];
+			buffer.get(encoded);
+			return encoded;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.config.FacialRecognitionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultipartFrameReaderTests {
+
+	private final ImageBufferPool bufferPool = new ImageBufferPool(new FacialRecognitionProperties(), new SimpleMeterRegistry());
+
+	@Test
+	void splitsAStreamIntoFramesByContentLength() throws IOException {
+		String stream = "preamble\r\n"
+				+ "--frame\r\nContent-Type: image/jpeg\r\nContent-Length: 11\r\n\r\nfirst\r\n--fr\r\n"
+				+ "--frame\r\ncontent-length: 6\r\n\r\nsecond\r\n"
+				+ "--frame--\r\n";
+		MultipartFrameReader reader = reader(stream, "frame");
+
+		assertThat(content(reader.next(bufferPool, Long.MAX_VALUE))).isEqualTo("first\r\n--fr"); // Boundary-like bytes inside a frame
+		assertThat(content(reader.next(bufferPool, Long.MAX_VALUE))).isEqualTo("second");
+		assertThat(reader.next(bufferPool, Long.MAX_VALUE)).isNull();
+		assertThat(reader.next(bufferPool, Long.MAX_VALUE)).isNull();
+	}
+
+	@Test
+	void endsWhenTheUploadEndsWithoutAClosingDelimiter() throws IOException {
+		MultipartFrameReader reader = reader("--frame\nContent-Length: 3\n\nabc\n", "--frame");
+
+		assertThat(content(reader.next(bufferPool, Long.MAX_VALUE))).isEqualTo("abc");
+		assertThat(reader.next(bufferPool, Long.MAX_VALUE)).isNull();
+	}
+
+	@Test
+	void rejectsPartsWithoutALengthOrCutShort() {
+		assertThatThrownBy(() -> reader("--frame\r\nContent-Type: image/jpeg\r\n\r\nabc\r\n", "frame").next(bufferPool, Long.MAX_VALUE))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Content-Length");
+		assertThatThrownBy(() -> reader("--frame\r\nContent-Length: 10\r\n\r\nabc", "frame").next(bufferPool, Long.MAX_VALUE))
+				.isInstanceOf(EOFException.class);
+	}
+
+	@Test
+	void skipsFramesOverTheSizeLimit() throws IOException {
+		MultipartFrameReader reader = reader("--frame\r\nContent-Length: 10\r\n\r\n0123456789\r\n"
+				+ "--frame\r\nContent-Length: 3\r\n\r\nabc\r\n--frame--\r\n", "frame");
+
+		assertThatThrownBy(() -> reader.next(bufferPool, 4)).isInstanceOf(IllegalArgumentException.class);
+		assertThat(content(reader.next(bufferPool, 4))).isEqualTo("abc");
+		assertThat(reader.next(bufferPool, 4)).isNull();
+	}
+
+	private static MultipartFrameReader reader(String stream, String boundary) {
+		return new MultipartFrameReader(new ByteArrayInputStream(stream.getBytes(StandardCharsets.ISO_8859_1)), boundary);
+	}
+
+	private static String content(ImageBuffer frame) {
+		try (frame) {
+			ByteBuffer data = frame.data();
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			return new String(bytes, StandardCharsets.ISO_8859_1);
+		}
+	}
+}
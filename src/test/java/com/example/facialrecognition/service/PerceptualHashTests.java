@@ -0,0 +1,67 @@
+package com.example.facialrecognition.service;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imencode;
+import static org.bytedeco.opencv.global.opencv_imgproc.FILLED;
+import static org.bytedeco.opencv.global.opencv_imgproc.rectangle;
+
+class PerceptualHashTests {
+
+	@Test
+	void reencodedFramesOfTheSameSceneHashAlike() {
+		Long original = PerceptualHash.of(direct(encode(scene(), ".jpg")));
+		Long reencoded = PerceptualHash.of(ByteBuffer.wrap(encode(scene(), ".png")));
+
+		assertThat(original).isNotNull();
+		assertThat(PerceptualHash.distance(original, reencoded)).isLessThanOrEqualTo(6);
+	}
+
+	@Test
+	void aPersonEnteringTheSceneChangesTheHash() {
+		Long empty = PerceptualHash.of(direct(encode(scene(), ".jpg")));
+		Mat occupied = scene();
+		rectangle(occupied, new Point(640, 0), new Point(1279, 719), new Scalar(250, 250, 250, 0), FILLED, 8, 0);
+
+		assertThat(PerceptualHash.distance(empty, PerceptualHash.of(direct(encode(occupied, ".jpg"))))).isGreaterThan(6);
+	}
+
+	@Test
+	void returnsNullForDataThatIsNotAnImage() {
+		assertThat(PerceptualHash.of(ByteBuffer.wrap("not an image".getBytes()))).isNull();
+	}
+
+	/**
+	 * A 720p frame getting darker from left to right, so every hash bit is set by a clear margin.
+	 */
+	private static Mat scene() {
+		Mat image = new Mat(720, 1280, CV_8UC3, new Scalar(0, 0, 0, 0));
+		for (int strip = 0; strip < 80; strip++) {
+			double level = 230 - strip * 2.5;
+			rectangle(image, new Point(strip * 16, 0), new Point(strip * 16 + 15, 719),
+					new Scalar(level, level, level, 0), FILLED, 8, 0);
+		}
+		return image;
+	}
+
+	private static ByteBuffer direct(byte[] encoded) {
+		return ByteBuffer.allocateDirect(encoded.length).put(encoded).flip();
+	}
+
+	private static byte[] encode(Mat image, String format) {
+		try (BytePointer buffer = new BytePointer()) {
+			imencode(format, image, buffer);
+			byte[] encoded = new byte[(int) buffer.limit()];
+			buffer.get(encoded);
+			return encoded;
+		}
+	}
+}
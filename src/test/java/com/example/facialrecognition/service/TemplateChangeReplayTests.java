@@ -0,0 +1,111 @@
+package com.example.facialrecognition.service;
+
+import com.example.facialrecognition.FacialRecognitionApplication;
+import com.example.facialrecognition.index.EmbeddingIndex;
+import com.example.facialrecognition.model.FacialTemplate;
+import com.example.facialrecognition.model.User;
+import com.example.facialrecognition.repository.UserRepository;
+import com.example.facialrecognition.vector.EmbeddingCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static com.example.facialrecognition.index.TestEmbeddings.randomUnitVector;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two nodes sharing one file-based H2 database, as several instances share the production database.
+ */
+class TemplateChangeReplayTests {
+
+	private static final int DIMENSION = 128;
+
+	@TempDir
+	Path directory;
+
+	private final Random random = new Random(5);
+
+	@Test
+	void enrollmentsOnOneNodeReachAnotherThroughTheChangeLog() {
+		try (ConfigurableApplicationContext nodeA = startNode("node-a");
+			 ConfigurableApplicationContext nodeB = startNode("node-b")) {
+			FacialTemplateStore storeA = nodeA.getBean(FacialTemplateStore.class);
+			EmbeddingIndex indexB = nodeB.getBean(EmbeddingIndex.class);
+			User alice = nodeA.getBean(UserRepository.class).save(new User(null, "alice"));
+			float[] embedding = randomUnitVector(random, DIMENSION);
+			FacialTemplate template = storeA.save(new FacialTemplate(null, alice, EmbeddingCodec.encode(embedding),
+					"alice.png", LocalDateTime.now()));
+
+			assertThat(indexB.size()).isZero();
+			assertThat(indexB.replayChanges("node-b")).containsExactly("alice");
+			assertThat(indexB.search(embedding, 1).get(0).templateId()).isEqualTo(template.getId());
+
+			storeA.deleteAll(alice);
+			indexB.replayChanges("node-b");
+			assertThat(indexB.size()).isZero();
+		}
+	}
+
+	@Test
+	void ownTemplateThatFailedToPublishIsIndexedByTheNextReplay() {
+		try (ConfigurableApplicationContext nodeA = startNode("node-a")) {
+			FacialTemplateStore storeA = nodeA.getBean(FacialTemplateStore.class);
+			EmbeddingIndex indexA = nodeA.getBean(EmbeddingIndex.class);
+			User alice = nodeA.getBean(UserRepository.class).save(new User(null, "alice"));
+			float[] embedding = randomUnitVector(random, DIMENSION);
+			FacialTemplate template = storeA.save(new FacialTemplate(null, alice, EmbeddingCodec.encode(embedding),
+					"alice.png", LocalDateTime.now()));
+
+			// The index rejects what it is handed, but the committed template is intact
+			assertThat(indexA.publish(template.getId(), "alice", EmbeddingCodec.encode(new float[DIMENSION]))).isFalse();
+			assertThat(indexA.size()).isZero();
+
+			assertThat(indexA.replayChanges("node-a")).containsExactly("alice");
+			assertThat(indexA.search(embedding, 1).get(0).templateId()).isEqualTo(template.getId());
+		}
+	}
+
+	@Test
+	void restartedNodeCatchesUpFromItsSnapshotAndTheLog() {
+		try (ConfigurableApplicationContext nodeA = startNode("node-a")) {
+			FacialTemplateStore storeA = nodeA.getBean(FacialTemplateStore.class);
+			UserRepository users = nodeA.getBean(UserRepository.class);
+			storeA.save(new FacialTemplate(null, users.save(new User(null, "alice")),
+					EmbeddingCodec.encode(randomUnitVector(random, DIMENSION)), "alice.png", LocalDateTime.now()));
+
+			try (ConfigurableApplicationContext nodeB = startNode("node-b")) {
+				assertThat(nodeB.getBean(EmbeddingIndex.class).size()).isEqualTo(1); // Loaded from the database
+			}
+
+			// Changes made while node B is down
+			User bob = users.save(new User(null, "bob"));
+			float[] embedding = randomUnitVector(random, DIMENSION);
+			FacialTemplate template = storeA.save(new FacialTemplate(null, bob, EmbeddingCodec.encode(embedding),
+					"bob.png", LocalDateTime.now()));
+
+			try (ConfigurableApplicationContext nodeB = startNode("node-b")) {
+				EmbeddingIndex indexB = nodeB.getBean(EmbeddingIndex.class);
+				assertThat(indexB.size()).isEqualTo(2);
+				assertThat(indexB.checkpoint()).isEqualTo(2L); // Both changes
+				assertThat(indexB.search(embedding, 1).get(0).templateId()).isEqualTo(template.getId());
+			}
+		}
+	}
+
+	private ConfigurableApplicationContext startNode(String nodeId) {
+		return new SpringApplicationBuilder(FacialRecognitionApplication.class)
+				.web(WebApplicationType.NONE)
+				.run("--spring.datasource.url=jdbc:h2:file:" + directory.resolve("db") + ";AUTO_SERVER=TRUE",
+						"--facial.recognition.strategy=mock",
+						"--facial.recognition.changes.enabled=false", // Replayed explicitly instead of on a schedule
+						"--facial.recognition.changes.node-id=" + nodeId,
+						"--facial.recognition.store.enabled=true",
+						"--facial.recognition.store.directory=" + directory.resolve(nodeId));
+	}
+}
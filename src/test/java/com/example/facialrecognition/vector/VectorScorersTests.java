@@ -0,0 +1,51 @@
+package com.example.facialrecognition.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class VectorScorersTests {
+
+	@Test
+	void simdIsSelectedWhenVectorModuleIsEnabled() {
+		// Surefire runs with --add-modules jdk.incubator.vector
+		assertThat(VectorScorers.get()).isInstanceOf(SimdVectorScorer.class);
+	}
+
+	@Test
+	void simdAndScalarKernelsAgreeAcrossLengthsAndOffsets() {
+		VectorScorer simd = VectorScorers.get();
+		VectorScorer scalar = VectorScorers.scalar();
+		Random random = new Random(3);
+		for (int length : new int[]{1, 3, 7, 16, 33, 128, 512, 515}) {
+			float[] a = randomArray(random, length + 5);
+			float[] b = randomArray(random, length + 9);
+			assertThat(simd.dot(a, 5, b, 9, length)).isCloseTo(scalar.dot(a, 5, b, 9, length), within(1e-3f));
+			assertThat(simd.squareDistance(a, 5, b, 9, length))
+					.isCloseTo(scalar.squareDistance(a, 5, b, 9, length), within(1e-3f));
+
+			byte[] codes = new byte[length + 2];
+			random.nextBytes(codes);
+			assertThat(simd.dotInt8(a, 5, codes, 2, length)).isCloseTo(scalar.dotInt8(a, 5, codes, 2, length), within(1e-1f));
+		}
+	}
+
+	@Test
+	void cosineOfNormalizedVectorWithItselfIsOne() {
+		float[] vector = randomArray(new Random(5), 512);
+		EmbeddingCodec.normalize(vector);
+		float[] roundTripped = EmbeddingCodec.decode(EmbeddingCodec.encode(vector));
+		assertThat(VectorScorers.get().cosine(vector, roundTripped)).isCloseTo(1f, within(1e-5f));
+	}
+
+	private static float[] randomArray(Random random, int length) {
+		float[] array = new float[length];
+		for (int i = 0; i < length; i++) {
+			array[i] = (float) random.nextGaussian();
+		}
+		return array;
+	}
+}